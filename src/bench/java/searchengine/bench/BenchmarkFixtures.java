@@ -0,0 +1,188 @@
+package searchengine.bench;
+
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import searchengine.config.SearchSettings;
+import searchengine.index.InvertedIndex;
+import searchengine.repositories.IndexRepository;
+import searchengine.repositories.LemmaRepository;
+import searchengine.services.LemmasFinder;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Детерминированные входные данные микробенчмарков: тексты и индекс с частотами по закону Ципфа.
+ */
+public final class BenchmarkFixtures {
+    public static final long SEED = 20240601L;
+
+    private static final String[] RUSSIAN = {
+            "и", "в", "не", "на", "что", "с", "по", "это", "как", "для", "из", "от", "при", "или", "его", "также",
+            "поиск", "поиска", "поиском", "поисковый", "поисковая", "поисковые", "поисковых", "индекс", "индекса",
+            "индексом", "индексации", "индексирование", "страница", "страницы", "странице", "страницу", "страницами",
+            "сайт", "сайта", "сайтов", "сайтам", "запрос", "запроса", "запросы", "запросов", "ответ", "ответа",
+            "документ", "документы", "документов", "ссылка", "ссылки", "ссылок", "текст", "текста", "текстов",
+            "лемма", "леммы", "лемм", "словарь", "словаря", "сервер", "сервера", "серверов", "клиент", "клиенты",
+            "данные", "данных", "таблица", "таблицы", "таблице", "запись", "записи", "записей", "очередь", "очереди",
+            "поток", "потоки", "потоков", "память", "памяти", "диск", "диска", "время", "времени", "результат",
+            "результаты", "результатов", "пользователь", "пользователя", "пользователей", "система", "системы",
+            "быстрый", "быстрая", "быстрые", "быстро", "медленный", "медленно", "большой", "большие", "больших",
+            "новый", "новые", "новых", "старый", "старые", "главный", "главная", "полезный", "полезные", "точный",
+            "точные", "простой", "простые", "сложный", "сложные", "русский", "русского", "работает", "работают",
+            "работать", "ищет", "искать", "находит", "найти", "найдены", "строит", "строить", "читает", "читать",
+            "пишет", "писать", "хранит", "хранить", "считает", "считать", "обходит", "обходить", "загружает",
+            "загружать", "загружены", "показывает", "показать", "обновляет", "обновить", "удаляет", "удалить"
+    };
+
+    private static final String[] ENGLISH = {
+            "the", "a", "of", "and", "to", "in", "is", "for", "with", "on", "that", "by", "as", "it", "from", "are",
+            "search", "searching", "searches", "searched", "index", "indexes", "indexing", "indexed", "page", "pages",
+            "site", "sites", "query", "queries", "result", "results", "document", "documents", "link", "links",
+            "text", "texts", "word", "words", "server", "servers", "client", "clients", "memory", "thread", "threads",
+            "table", "tables", "record", "records", "queue", "queues", "disk", "time", "user", "users", "system",
+            "systems", "fast", "faster", "fastest", "slow", "slower", "large", "larger", "new", "old", "main",
+            "useful", "exact", "simple", "complex", "works", "working", "worked", "finds", "finding", "found",
+            "builds", "building", "built", "reads", "reading", "writes", "writing", "written", "stores", "storing",
+            "stored", "counts", "counting", "crawls", "crawling", "crawled", "loads", "loading", "loaded", "shows",
+            "showing", "updates", "updating", "updated", "deletes", "deleting", "deleted", "running", "ran", "runs"
+    };
+
+    public enum Corpus {RUSSIAN, ENGLISH, MIXED}
+
+    private BenchmarkFixtures() {
+    }
+
+    public static LemmasFinder lemmasFinder(ForkJoinPool pool) throws IOException {
+        return new LemmasFinder(new RussianLuceneMorphology(), new EnglishLuceneMorphology(), 200_000, pool, 65_536, 16_384);
+    }
+
+    /**
+     * Текст из предложений длиной от 6 до 20 слов, разбитый на абзацы; в смешанном корпусе
+     * русские и английские предложения чередуются случайно.
+     */
+    public static String text(Corpus corpus, int length, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Zipf russian = new Zipf(RUSSIAN.length);
+        Zipf english = new Zipf(ENGLISH.length);
+        StringBuilder text = new StringBuilder(length + 256);
+        while (text.length() < length) {
+            boolean isRussian = corpus == Corpus.RUSSIAN || (corpus == Corpus.MIXED && random.nextBoolean());
+            String[] words = isRussian ? RUSSIAN : ENGLISH;
+            Zipf zipf = isRussian ? russian : english;
+            int sentence = 6 + random.nextInt(15);
+            for (int i = 0; i < sentence; i++) {
+                String word = words[zipf.sample(random)];
+                text.append(i == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+                text.append(i + 1 < sentence ? (random.nextInt(8) == 0 ? ", " : " ") : ". ");
+            }
+            if (random.nextInt(5) == 0) {
+                text.append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Индекс сайтов с одинаковым распределением лемм: лемма "l{r}" с рангом r встречается
+     * на странице с вероятностью, убывающей как 1/r. У каждого сайта свои id лемм.
+     *
+     * @param segmentDirectory каталог сегментов; если задан, индекс переписывается в сегмент,
+     *                         и поиск идёт по отображённому файлу, иначе по спискам в куче
+     */
+    public static InvertedIndex index(int sites, int pagesPerSite, int vocabulary, int tokensPerPage, Path segmentDirectory) {
+        SearchSettings settings = new SearchSettings();
+        settings.setSegmentDirectory(segmentDirectory == null ? "" : segmentDirectory.toString());
+        InvertedIndex index = new InvertedIndex(emptyRepository(LemmaRepository.class), emptyRepository(IndexRepository.class),
+                settings);
+        index.load();
+
+        SplittableRandom random = new SplittableRandom(SEED);
+        Zipf zipf = new Zipf(vocabulary);
+        int pageId = 0;
+        for (int site = 1; site <= sites; site++) {
+            for (int page = 0; page < pagesPerSite; page++) {
+                Map<String, Integer> ranks = new HashMap<>();
+                Map<String, Integer> lemmaIds = new HashMap<>();
+                for (int token = 0; token < tokensPerPage; token++) {
+                    int rank = zipf.sample(random) + 1;
+                    String lemma = lemma(rank);
+                    ranks.merge(lemma, 1, Integer::sum);
+                    lemmaIds.putIfAbsent(lemma, (site - 1) * vocabulary + rank);
+                }
+                index.addPage(site, ++pageId, lemmaIds, ranks);
+            }
+        }
+        if (segmentDirectory != null) {
+            index.compact();
+        }
+        return index;
+    }
+
+    public static String lemma(int rank) {
+        return "l" + rank;
+    }
+
+    public static Path temporaryDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix);
+    }
+
+    public static void deleteRecursively(Path directory) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        try (var paths = Files.walk(directory)) {
+            for (Path path : paths.sorted((a, b) -> b.compareTo(a)).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Репозиторий без данных: индекс считает себя загруженным из пустой БД.
+     */
+    private static <T> T emptyRepository(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> type.getSimpleName();
+                };
+            }
+            return List.class.isAssignableFrom(method.getReturnType()) ? List.of() : null;
+        }));
+    }
+
+    /**
+     * Номера от 0 до n - 1 с вероятностью, пропорциональной 1 / (номер + 1).
+     */
+    private static final class Zipf {
+        private final double[] cumulative;
+
+        Zipf(int n) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1.0 / (i + 1);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cumulative[i] /= sum;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(cumulative.length - 1, index >= 0 ? index : -index - 1);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package searchengine.bench;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import searchengine.Application;
+import searchengine.dto.ApiResponse;
+import searchengine.services.IndexingService;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Замер полной индексации {@link SyntheticSite} без сети, запуск: {@code mvn -Pcrawl-benchmark verify}.
+ */
+@Slf4j
+public class CrawlBenchmark {
+    private static final String[] TABLES = {"page", "page_text", "page_content", "`index`", "lemma"};
+
+    public static void main(String[] args) throws Exception {
+        ApplicationArguments options = new DefaultApplicationArguments(args);
+        int pages = intOption(options, "pages", 2000);
+        int fanOut = intOption(options, "fan-out", 8);
+        int depth = intOption(options, "depth", 6);
+        int bodyBytes = intOption(options, "body-bytes", 8192);
+        long latencyMs = intOption(options, "latency-ms", 5);
+        double errorRate = doubleOption(options, "error-rate", 0.01);
+        long seed = intOption(options, "seed", 42);
+        int serverThreads = intOption(options, "server-threads", 64);
+        double minPagesPerSecond = doubleOption(options, "min-pages-per-second", 0);
+        long timeoutSeconds = intOption(options, "timeout-seconds", 600);
+
+        Path segments = BenchmarkFixtures.temporaryDirectory("crawl-benchmark-segments");
+        int exitCode;
+        try (SyntheticSite site = new SyntheticSite(pages, fanOut, depth, bodyBytes, latencyMs, errorRate, seed, serverThreads);
+             ConfigurableApplicationContext context = SpringApplication.run(Application.class,
+                     applicationArguments(site.url(), segments, options))) {
+            IndexingService indexingService = context.getBean(IndexingService.class);
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            HeapSampler heap = new HeapSampler();
+
+            System.gc();
+            long baselineHeap = heap.used();
+            heap.start();
+            long startedAt = System.nanoTime();
+            ApiResponse response = indexingService.startIndexing(false);
+            if (!response.isResult()) {
+                throw new IllegalStateException("Индексация не запустилась: " + response.getError());
+            }
+            long deadline = startedAt + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+            while (indexingService.isIndexing()) {
+                if (System.nanoTime() > deadline) {
+                    indexingService.stopIndexing();
+                    throw new IllegalStateException("Индексация не завершилась за " + timeoutSeconds + " с");
+                }
+                Thread.sleep(20);
+            }
+            double seconds = (System.nanoTime() - startedAt) / 1e9;
+            heap.stop();
+
+            long crawledPages = count(jdbcTemplate, "page");
+            long rows = 0;
+            for (String table : TABLES) {
+                rows += count(jdbcTemplate, table);
+            }
+            int expectedPages = site.reachablePages();
+            double pagesPerSecond = crawledPages / seconds;
+
+            log.info("Сайт: {} страниц, ветвление {}, глубина {}, тело {} байт, задержка {} мс, ошибок {}%",
+                    expectedPages, fanOut, depth, bodyBytes, latencyMs, errorRate * 100);
+            log.info("Обход: {} страниц за {} с, запросов к сайту {}", crawledPages, String.format("%.2f", seconds), site.requests());
+            // Итог идёт в stdout, а не в лог: строка key=value без префиксов логгера - машиночитаемый результат замера.
+            System.out.printf("crawl-benchmark pages=%d expectedPages=%d seconds=%.2f pagesPerSecond=%.1f rows=%d rowsPerSecond=%.1f "
+                            + "baselineHeapMb=%.1f peakHeapMb=%.1f%n",
+                    crawledPages, expectedPages, seconds, pagesPerSecond, rows, rows / seconds,
+                    baselineHeap / 1048576d, heap.peak() / 1048576d);
+
+            exitCode = 0;
+            if (crawledPages != expectedPages) {
+                log.error("Обход сохранил {} страниц вместо {}", crawledPages, expectedPages);
+                exitCode = 1;
+            }
+            if (pagesPerSecond < minPagesPerSecond) {
+                log.error("Скорость обхода {} страниц/с ниже порога {}", String.format("%.1f", pagesPerSecond), minPagesPerSecond);
+                exitCode = 1;
+            }
+        } finally {
+            BenchmarkFixtures.deleteRecursively(segments);
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * Настройки приложения для замера. Аргументы командной строки старше application.yaml,
+     * поэтому база, список сайтов и каталог сегментов подменяются здесь. Аргументы вида
+     * {@code --spring.*}, {@code --indexing-settings.*} и {@code --search-settings.*} передаются приложению как есть.
+     */
+    private static String[] applicationArguments(String siteUrl, Path segments, ApplicationArguments options) {
+        List<String> arguments = new ArrayList<>(List.of(
+                "--spring.main.web-application-type=none",
+                "--spring.datasource.url=jdbc:h2:mem:crawl-benchmark;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--spring.jpa.hibernate.ddl-auto=create",
+                "--spring.jpa.show-sql=false",
+                "--indexing-settings.sites[0].url=" + siteUrl,
+                "--indexing-settings.sites[0].name=Synthetic",
+                "--indexing-settings.sites[0].requests-per-second=100000",
+                "--indexing-settings.sites[0].burst=1000",
+                "--indexing-settings.crawler.max-connections-per-host=" + intOption(options, "connections", 64),
+                "--search-settings.segment-directory=" + segments));
+        for (String name : options.getOptionNames()) {
+            if (name.startsWith("spring.") || name.startsWith("indexing-settings.") || name.startsWith("search-settings.")) {
+                for (String value : options.getOptionValues(name)) {
+                    arguments.add("--" + name + "=" + value);
+                }
+            }
+        }
+        return arguments.toArray(String[]::new);
+    }
+
+    private static long count(JdbcTemplate jdbcTemplate, String table) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+        return count == null ? 0 : count;
+    }
+
+    private static int intOption(ApplicationArguments options, String name, int defaultValue) {
+        List<String> values = options.getOptionValues(name);
+        return values == null || values.isEmpty() ? defaultValue : Integer.parseInt(values.get(0));
+    }
+
+    private static double doubleOption(ApplicationArguments options, String name, double defaultValue) {
+        List<String> values = options.getOptionValues(name);
+        return values == null || values.isEmpty() ? defaultValue : Double.parseDouble(values.get(0));
+    }
+
+    /**
+     * Опрашивает занятую кучу раз в 10 мс и запоминает максимум.
+     */
+    private static final class HeapSampler {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicLong peak = new AtomicLong();
+        private volatile boolean running;
+        private Thread thread;
+
+        long used() {
+            return memory.getHeapMemoryUsage().getUsed();
+        }
+
+        long peak() {
+            return peak.get();
+        }
+
+        void start() {
+            running = true;
+            thread = new Thread(() -> {
+                while (running) {
+                    peak.accumulateAndGet(used(), Math::max);
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "heap-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            thread.join();
+            peak.accumulateAndGet(used(), Math::max);
+        }
+    }
+}
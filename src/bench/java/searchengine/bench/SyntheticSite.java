@@ -0,0 +1,198 @@
+package searchengine.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Локальный сайт-дерево для замеров обхода без сети с заданной задержкой ответов и долей ошибок.
+ */
+public class SyntheticSite implements AutoCloseable {
+    static {
+        // Без TCP_NODELAY встроенный сервер отвечает с задержкой подтверждения ~40 мс на запрос,
+        // и замер мерил бы её, а не обход. Свойство читается при первом создании HttpServer.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private static final String[] WORDS = {
+            "поиск", "индекс", "страница", "сайт", "лемма", "запрос", "ответ", "документ", "ссылка", "текст",
+            "быстрый", "медленный", "большой", "новый", "старый", "главный", "сетевой", "полезный", "точный", "простой",
+            "работать", "искать", "находить", "строить", "читать", "писать", "хранить", "считать", "обходить", "загружать",
+            "данные", "сервер", "клиент", "очередь", "поток", "память", "диск", "таблица", "запись", "словарь",
+            "search", "index", "crawler", "engine", "server", "client", "memory", "thread", "query", "result"
+    };
+
+    private final int pageCount;
+    private final int fanOut;
+    private final int depth;
+    private final int bodyBytes;
+    private final long latencyMs;
+    private final double errorRate;
+    private final long seed;
+    private final AtomicLong requests = new AtomicLong();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public SyntheticSite(int pageCount, int fanOut, int depth, int bodyBytes, long latencyMs, double errorRate, long seed,
+                         int threads) throws IOException {
+        if (pageCount < 1 || fanOut < 1 || depth < 0) {
+            throw new IllegalArgumentException("Нужны pageCount >= 1, fanOut >= 1 и depth >= 0");
+        }
+        this.pageCount = pageCount;
+        this.fanOut = fanOut;
+        this.depth = depth;
+        this.bodyBytes = bodyBytes;
+        this.latencyMs = latencyMs;
+        this.errorRate = errorRate;
+        this.seed = seed;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    /**
+     * Число страниц, до которых обход может дойти: потомки страниц с ошибкой недостижимы.
+     */
+    public int reachablePages() {
+        int reachable = 0;
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            int page = queue.poll();
+            reachable++;
+            if (!isError(page)) {
+                for (int child : children(page)) {
+                    queue.add(child);
+                }
+            }
+        }
+        return reachable;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            if (latencyMs > 0) {
+                try {
+                    Thread.sleep(latencyMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            int page = pageId(exchange.getRequestURI().getPath());
+            if (page < 0) {
+                respond(exchange, 404, "<html><body>Not found</body></html>");
+            } else if (isError(page)) {
+                respond(exchange, 500, "<html><body>Internal error</body></html>");
+            } else {
+                respond(exchange, 200, render(page));
+            }
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int code, String html) throws IOException {
+        byte[] body = html.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    private int pageId(String path) {
+        if (path.isEmpty() || path.equals("/")) {
+            return 0;
+        }
+        if (!path.startsWith("/page/")) {
+            return -1;
+        }
+        try {
+            int page = Integer.parseInt(path.substring("/page/".length()));
+            return page > 0 && page < pageCount && level(page) <= depth ? page : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String path(int page) {
+        return page == 0 ? "/" : "/page/" + page;
+    }
+
+    private boolean isError(int page) {
+        return page != 0 && new SplittableRandom(seed ^ (page * 0x9E3779B97F4A7C15L)).nextDouble() < errorRate;
+    }
+
+    private int[] children(int page) {
+        if (level(page) >= depth) {
+            return new int[0];
+        }
+        long first = (long) page * fanOut + 1;
+        int count = (int) Math.max(0, Math.min(fanOut, pageCount - first));
+        int[] children = new int[count];
+        for (int i = 0; i < count; i++) {
+            children[i] = (int) (first + i);
+        }
+        return children;
+    }
+
+    private int level(int page) {
+        int level = 0;
+        while (page > 0) {
+            page = (page - 1) / fanOut;
+            level++;
+        }
+        return level;
+    }
+
+    private String render(int page) {
+        SplittableRandom random = new SplittableRandom(seed + page);
+        StringBuilder html = new StringBuilder(bodyBytes + 1024);
+        html.append("<html><head><title>Страница ").append(page).append(' ')
+                .append(WORDS[random.nextInt(WORDS.length)]).append("</title></head><body>\n<nav>");
+        int parent = page > 0 ? (page - 1) / fanOut : 0;
+        if (parent > 0) {
+            html.append("<a href=\"").append(path(parent)).append("\">Назад</a> ");
+        }
+        for (int child : children(page)) {
+            html.append("<a href=\"").append(path(child)).append("\">").append(WORDS[child % WORDS.length]).append("</a> ");
+        }
+        html.append("</nav>\n");
+        while (html.length() < bodyBytes) {
+            html.append("<p>");
+            int sentence = 8 + random.nextInt(24);
+            for (int i = 0; i < sentence; i++) {
+                html.append(WORDS[random.nextInt(WORDS.length)]).append(i + 1 < sentence ? ' ' : '.');
+            }
+            html.append("</p>\n");
+        }
+        return html.append("</body></html>").toString();
+    }
+}
@@ -0,0 +1,57 @@
+package searchengine.bench;
+
+import org.openjdk.jmh.annotations.*;
+import searchengine.services.LemmasFinder;
+import searchengine.services.PageTokens;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Лемматизация русского, английского и смешанного текста.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LemmatizationBenchmark {
+
+    @Param({"RUSSIAN", "ENGLISH", "MIXED"})
+    private BenchmarkFixtures.Corpus corpus;
+
+    @Param({"4096", "262144"})
+    private int length;
+
+    private ForkJoinPool pool;
+    private LemmasFinder lemmasFinder;
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        lemmasFinder = BenchmarkFixtures.lemmasFinder(pool);
+        text = BenchmarkFixtures.text(corpus, length, BenchmarkFixtures.SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Map<String, Integer> findLemmas() {
+        return lemmasFinder.findLemmas(text);
+    }
+
+    /**
+     * Путь индексации: частоты и позиции лемм за один проход.
+     */
+    @Benchmark
+    public PageTokens pageTokens() {
+        return PageTokens.of(lemmasFinder, text);
+    }
+}
@@ -0,0 +1,73 @@
+package searchengine.bench;
+
+import org.openjdk.jmh.annotations.*;
+import searchengine.config.SearchSettings;
+import searchengine.index.InvertedIndex;
+import searchengine.index.SearchHits;
+import searchengine.index.TopPages;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пересечение списков страниц и ранжирование на индексе двух сайтов по 10 000 страниц.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    private static final List<Integer> SITE_IDS = List.of(1, 2);
+    private static final int CACHED_RESULTS = new SearchSettings().getMaxCachedResults();
+
+    @Param({"heap", "segment"})
+    private String storage;
+
+    @Param({"frequent", "mixed", "rare"})
+    private String query;
+
+    private Path segmentDirectory;
+    private InvertedIndex index;
+    private List<String> lemmas;
+    private SearchHits hits;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        segmentDirectory = storage.equals("segment") ? BenchmarkFixtures.temporaryDirectory("search-benchmark") : null;
+        index = BenchmarkFixtures.index(SITE_IDS.size(), 10_000, 50_000, 300, segmentDirectory);
+        lemmas = switch (query) {
+            case "frequent" -> List.of(BenchmarkFixtures.lemma(9), BenchmarkFixtures.lemma(4), BenchmarkFixtures.lemma(1));
+            case "mixed" -> List.of(BenchmarkFixtures.lemma(900), BenchmarkFixtures.lemma(40), BenchmarkFixtures.lemma(2));
+            default -> List.of(BenchmarkFixtures.lemma(5000), BenchmarkFixtures.lemma(300), BenchmarkFixtures.lemma(1));
+        };
+        hits = index.findPages(SITE_IDS, lemmas);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.deleteRecursively(segmentDirectory);
+    }
+
+    @Benchmark
+    public SearchHits findPages() {
+        return index.findPages(SITE_IDS, lemmas);
+    }
+
+    /**
+     * Отбор лучших страниц по релевантности, как при заполнении кэша результатов.
+     */
+    @Benchmark
+    public long[] rankPages() {
+        return TopPages.select(hits, CACHED_RESULTS);
+    }
+
+    @Benchmark
+    public long[] findAndRankPages() {
+        SearchHits found = index.findPages(SITE_IDS, lemmas);
+        return TopPages.select(found, CACHED_RESULTS);
+    }
+}
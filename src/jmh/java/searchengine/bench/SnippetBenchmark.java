@@ -0,0 +1,96 @@
+package searchengine.bench;
+
+import org.openjdk.jmh.annotations.*;
+import searchengine.model.PageText;
+import searchengine.services.LemmasFinder;
+import searchengine.services.PageTokens;
+import searchengine.services.SnippetBuilder;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Построение сниппетов по сохранённым позициям лемм и с повторной лемматизацией.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnippetBenchmark {
+    private static final int PAGES = 64;
+    private static final int TEXT_LENGTH = 16_384;
+    private static final int QUERY_LEMMAS = 3;
+
+    @Param({"RUSSIAN", "MIXED"})
+    private BenchmarkFixtures.Corpus corpus;
+
+    private ForkJoinPool pool;
+    private SnippetBuilder snippetBuilder;
+    private PageText[] pages;
+    private PageText[] pagesWithoutPositions;
+    private List<Map<Integer, Integer>> terms;
+    private List<Set<String>> queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        pool = new ForkJoinPool(1);
+        LemmasFinder lemmasFinder = BenchmarkFixtures.lemmasFinder(pool);
+        snippetBuilder = new SnippetBuilder(lemmasFinder);
+        pages = new PageText[PAGES];
+        pagesWithoutPositions = new PageText[PAGES];
+        terms = new ArrayList<>();
+        queries = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(BenchmarkFixtures.SEED);
+        for (int i = 0; i < PAGES; i++) {
+            String text = BenchmarkFixtures.text(corpus, TEXT_LENGTH, BenchmarkFixtures.SEED + i);
+            PageTokens tokens = PageTokens.of(lemmasFinder, text);
+            List<String> pageLemmas = new ArrayList<>(new TreeSet<>(tokens.lemmaCounts().keySet()));
+            Map<String, Integer> lemmaIds = new HashMap<>();
+            for (int id = 0; id < pageLemmas.size(); id++) {
+                lemmaIds.put(pageLemmas.get(id), id + 1);
+            }
+            pages[i] = new PageText(i + 1, "Страница " + (i + 1), text);
+            pages[i].setPositions(tokens.encodePositions(lemmaIds));
+            pagesWithoutPositions[i] = new PageText(i + 1, "Страница " + (i + 1), text);
+
+            Set<String> query = new LinkedHashSet<>();
+            while (query.size() < Math.min(QUERY_LEMMAS, pageLemmas.size())) {
+                query.add(pageLemmas.get(random.nextInt(pageLemmas.size())));
+            }
+            Map<Integer, Integer> termsByLemmaId = new HashMap<>();
+            int term = 0;
+            for (String lemma : query) {
+                termsByLemmaId.put(lemmaIds.get(lemma), term++);
+            }
+            queries.add(query);
+            terms.add(termsByLemmaId);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public String fromPositions() {
+        int page = nextPage();
+        return snippetBuilder.build(pages[page], terms.get(page), queries.get(page));
+    }
+
+    @Benchmark
+    public String byMorphology() {
+        int page = nextPage();
+        return snippetBuilder.build(pagesWithoutPositions[page], terms.get(page), queries.get(page));
+    }
+
+    private int nextPage() {
+        next = next + 1 == PAGES ? 0 : next + 1;
+        return next;
+    }
+}
@@ -3,11 +3,13 @@ package searchengine.config;
 import org.apache.lucene.morphology.LuceneMorphology;
 import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import searchengine.services.LemmasFinder;
 
 import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
 
 @Configuration
 public class AppConfig {
@@ -21,8 +23,19 @@ public class AppConfig {
     public LuceneMorphology englishLuceneMorphology() throws IOException {
         return new EnglishLuceneMorphology();
     }
+
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool lemmatizationPool(@Value("${indexing-settings.lemmatize-parallelism:0}") int parallelism) {
+        return new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
     @Bean
-    public LemmasFinder lemmasFinder(LuceneMorphology russianLuceneMorphology, LuceneMorphology englishLuceneMorphology) {
-        return new LemmasFinder(russianLuceneMorphology, englishLuceneMorphology);
+    public LemmasFinder lemmasFinder(LuceneMorphology russianLuceneMorphology, LuceneMorphology englishLuceneMorphology,
+                                     @Value("${indexing-settings.lemma-cache-size:200000}") long lemmaCacheSize,
+                                     ForkJoinPool lemmatizationPool,
+                                     @Value("${indexing-settings.lemmatize-parallel-threshold:65536}") int parallelThreshold,
+                                     @Value("${indexing-settings.lemmatize-chunk-size:16384}") int chunkSize) {
+        return new LemmasFinder(russianLuceneMorphology, englishLuceneMorphology, lemmaCacheSize,
+                lemmatizationPool, parallelThreshold, chunkSize);
     }
 }
\ No newline at end of file
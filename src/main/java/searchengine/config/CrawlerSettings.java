@@ -0,0 +1,29 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "indexing-settings.crawler")
+public class CrawlerSettings {
+    /**
+     * platform - пул из fetchThreads потоков; virtual - виртуальный поток на загрузку (сборка с профилем java21,
+     * без него используется platform).
+     */
+    private String fetchMode = "platform";
+    private int fetchThreads = 16;
+    private int maxConnections = 256;
+    private int maxConnectionsPerHost = 8;
+    private int extractThreads = Runtime.getRuntime().availableProcessors();
+    private int extractQueueCapacity = 256;
+    private int lemmatizeThreads = Runtime.getRuntime().availableProcessors();
+    private int lemmatizeQueueCapacity = 256;
+    /**
+     * Предел длины текста документов, отличных от HTML: text/plain и форматов, разбираемых Tika.
+     */
+    private int maxBinaryTextChars = 1_000_000;
+}
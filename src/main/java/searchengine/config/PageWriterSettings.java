@@ -0,0 +1,20 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "indexing-settings.writer")
+public class PageWriterSettings {
+    private int threads = 2;
+    private int queueCapacity = 1000;
+    private int batchSize = 100;
+    private long flushIntervalMs = 500;
+    private long lemmaFlushIntervalMs = 5000;
+    private int retries = 2;
+    private long retryDelayMs = 500;
+}
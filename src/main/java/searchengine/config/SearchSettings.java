@@ -0,0 +1,30 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchSettings {
+    private long resultCacheMaxPages = 2_000_000;
+    /**
+     * Сколько лучших страниц запроса ранжируется и кэшируется; более далёкие страницы выдачи ранжируются заново.
+     */
+    private int maxCachedResults = 1000;
+    /**
+     * Леммы, встречающиеся на большей доле страниц, не участвуют в поиске.
+     */
+    private double maxLemmaPageShare = 0.8;
+    /**
+     * Каталог файлов сегментов поискового индекса; пустое значение отключает сегменты.
+     */
+    private String segmentDirectory = "";
+    /**
+     * Через сколько миллисекунд после индексации отдельной страницы индекс записывается в новый сегмент.
+     */
+    private long segmentCompactionDelayMs = 60_000;
+}
@@ -8,4 +8,9 @@ import lombok.Setter;
 public class Site {
     private String url;
     private String name;
+    /**
+     * Допустимая частота запросов к хосту сайта и число запросов, которые можно сделать подряд.
+     */
+    private double requestsPerSecond = 4;
+    private int burst = 1;
 }
@@ -0,0 +1,13 @@
+package searchengine.dto.indexing;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class StageStatistics {
+    private String name;
+    private int queued;
+    private int capacity;
+    private int active;
+}
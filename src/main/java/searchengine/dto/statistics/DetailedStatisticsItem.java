@@ -11,4 +11,12 @@ public class DetailedStatisticsItem {
     private String error;
     private int pages;
     private int lemmas;
+    /**
+     * Ход обхода; заполняется только во время индексации. eta - оценка оставшегося времени в секундах.
+     */
+    private long fetched;
+    private int queued;
+    private long failed;
+    private double pagesPerSecond;
+    private Long eta;
 }
\ No newline at end of file
@@ -0,0 +1,277 @@
+package searchengine.index;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Неизменяемый файл сегмента индекса, отображённый в память: словарь лемм и блоки {@link Postings}.
+ */
+final class IndexSegment {
+    private static final int MAGIC = 0x53454731;
+    private static final int HEADER_SIZE = 36;
+    private static final int LEMMA_SIZE = 28;
+    private static final int ID_SIZE = 8;
+    private static final int BLOCK_SIZE = 16;
+
+    private final ByteBuffer buffer;
+    private final int lemmaCount;
+    private final int idsOffset;
+    private final int stringsOffset;
+    private final int blocksOffset;
+    private final int dataOffset;
+
+    /**
+     * Лемма сайта и её страницы для записи в сегмент.
+     */
+    record Entry(int siteId, String lemma, int lemmaId, Postings.Snapshot postings) {
+    }
+
+    @FunctionalInterface
+    interface LemmaVisitor {
+        void visit(int siteId, String lemma, int lemmaId);
+    }
+
+    private IndexSegment(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.lemmaCount = buffer.getInt(8);
+        this.idsOffset = buffer.getInt(16);
+        this.stringsOffset = buffer.getInt(20);
+        this.blocksOffset = buffer.getInt(24);
+        this.dataOffset = buffer.getInt(28);
+    }
+
+    static IndexSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Недопустимый размер файла сегмента " + file + ": " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != size) {
+                throw new IOException("Файл сегмента повреждён: " + file);
+            }
+            return new IndexSegment(buffer);
+        }
+    }
+
+    int lemmaCount() {
+        return lemmaCount;
+    }
+
+    long byteSize() {
+        return buffer.capacity();
+    }
+
+    Integer findLemmaId(int siteId, String lemma) {
+        byte[] key = lemma.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = lemmaCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(middle, siteId, key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return buffer.getInt(lemmaOffset(middle) + 4);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Список страниц леммы или null, если леммы в сегменте нет.
+     */
+    Postings.Snapshot postings(int lemmaId) {
+        int low = 0;
+        int high = lemmaCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = buffer.getInt(idsOffset + middle * ID_SIZE);
+            if (id < lemmaId) {
+                low = middle + 1;
+            } else if (id > lemmaId) {
+                high = middle - 1;
+            } else {
+                int lemma = lemmaOffset(buffer.getInt(idsOffset + middle * ID_SIZE + 4));
+                return new MappedSnapshot(buffer.getInt(lemma + 16), buffer.getInt(lemma + 20), buffer.getInt(lemma + 24));
+            }
+        }
+        return null;
+    }
+
+    void forEachLemma(LemmaVisitor visitor) {
+        for (int i = 0; i < lemmaCount; i++) {
+            int offset = lemmaOffset(i);
+            byte[] lemma = new byte[buffer.getInt(offset + 12)];
+            buffer.get(stringsOffset + buffer.getInt(offset + 8), lemma);
+            visitor.visit(buffer.getInt(offset), new String(lemma, StandardCharsets.UTF_8), buffer.getInt(offset + 4));
+        }
+    }
+
+    private static int lemmaOffset(int index) {
+        return HEADER_SIZE + index * LEMMA_SIZE;
+    }
+
+    private int compare(int index, int siteId, byte[] key) {
+        int offset = lemmaOffset(index);
+        int entrySiteId = buffer.getInt(offset);
+        if (entrySiteId != siteId) {
+            return Integer.compare(entrySiteId, siteId);
+        }
+        int position = stringsOffset + buffer.getInt(offset + 8);
+        int length = buffer.getInt(offset + 12);
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            int comparison = Integer.compare(buffer.get(position + i) & 0xFF, key[i] & 0xFF);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    /**
+     * Записывает сегмент в новый файл. Списки перекодируются полными блоками, пустые пропускаются.
+     */
+    static void write(Path file, List<Entry> entries) throws IOException {
+        int count = entries.size();
+        byte[][] keys = new byte[count][];
+        Integer[] order = new Integer[count];
+        int blockCount = 0;
+        int stringsLength = 0;
+        for (int i = 0; i < count; i++) {
+            keys[i] = entries.get(i).lemma().getBytes(StandardCharsets.UTF_8);
+            order[i] = i;
+            blockCount += (entries.get(i).postings().size() + Postings.BLOCK_SIZE - 1) / Postings.BLOCK_SIZE;
+            stringsLength += keys[i].length;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int comparison = Integer.compare(entries.get(a).siteId(), entries.get(b).siteId());
+            return comparison != 0 ? comparison : Arrays.compareUnsigned(keys[a], keys[b]);
+        });
+        Integer[] byId = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            byId[i] = i;
+        }
+        Arrays.sort(byId, (a, b) -> Integer.compare(entries.get(order[a]).lemmaId(), entries.get(order[b]).lemmaId()));
+
+        int idsOffset = HEADER_SIZE + count * LEMMA_SIZE;
+        int stringsOffset = idsOffset + count * ID_SIZE;
+        int blocksOffset = stringsOffset + stringsLength;
+        long dataOffset = (long) blocksOffset + (long) blockCount * BLOCK_SIZE;
+        if (dataOffset > Integer.MAX_VALUE) {
+            throw new IOException("Сегмент индекса больше 2 ГБ");
+        }
+        ByteBuffer head = ByteBuffer.allocate((int) dataOffset);
+        head.position(HEADER_SIZE);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            channel.position(dataOffset);
+            OutputStream data = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            long dataLength = 0;
+            int block = 0;
+            int stringPosition = 0;
+            int[] pageIds = new int[0];
+            float[] ranks = new float[0];
+            for (int i = 0; i < count; i++) {
+                Entry entry = entries.get(order[i]);
+                int size = entry.postings().size();
+                if (pageIds.length < size) {
+                    pageIds = new int[size];
+                    ranks = new float[size];
+                }
+                entry.postings().decode(pageIds, ranks);
+                int entryBlocks = (size + Postings.BLOCK_SIZE - 1) / Postings.BLOCK_SIZE;
+                head.putInt(entry.siteId()).putInt(entry.lemmaId()).putInt(stringPosition).putInt(keys[order[i]].length)
+                        .putInt(block).putInt(entryBlocks).putInt(size);
+                stringPosition += keys[order[i]].length;
+                for (int from = 0; from < size; from += Postings.BLOCK_SIZE) {
+                    int to = Math.min(size, from + Postings.BLOCK_SIZE);
+                    byte[] encoded = Postings.encode(pageIds, ranks, from, to);
+                    if (dataOffset + dataLength + encoded.length > Integer.MAX_VALUE) {
+                        throw new IOException("Сегмент индекса больше 2 ГБ");
+                    }
+                    int blockPosition = blocksOffset + block * BLOCK_SIZE;
+                    head.putInt(blockPosition, pageIds[from]).putInt(blockPosition + 4, pageIds[to - 1])
+                            .putInt(blockPosition + 8, to - from).putInt(blockPosition + 12, (int) dataLength);
+                    data.write(encoded);
+                    dataLength += encoded.length;
+                    block++;
+                }
+            }
+            data.flush();
+            for (int i = 0; i < count; i++) {
+                head.putInt(entries.get(order[byId[i]]).lemmaId()).putInt(byId[i]);
+            }
+            for (int i = 0; i < count; i++) {
+                head.put(keys[order[i]]);
+            }
+            head.putInt(0, MAGIC).putInt(4, (int) (dataOffset + dataLength)).putInt(8, count).putInt(12, blockCount)
+                    .putInt(16, idsOffset).putInt(20, stringsOffset).putInt(24, blocksOffset).putInt(28, (int) dataOffset);
+            head.position(0);
+            head.limit(head.capacity());
+            while (head.hasRemaining()) {
+                channel.write(head, head.position());
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Список страниц леммы, читаемый из отображения.
+     */
+    private final class MappedSnapshot extends Postings.Snapshot {
+        private final int firstBlock;
+        private final int blockCount;
+        private final int size;
+
+        private MappedSnapshot(int firstBlock, int blockCount, int size) {
+            this.firstBlock = firstBlock;
+            this.blockCount = blockCount;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public long byteSize() {
+            return 0;
+        }
+
+        @Override
+        int blockCount() {
+            return blockCount;
+        }
+
+        @Override
+        int lastPageId(int block) {
+            return buffer.getInt(blockOffset(block) + 4);
+        }
+
+        @Override
+        int decodeBlock(int block, int[] pageIds, float[] ranks, int offset) {
+            int position = blockOffset(block);
+            return Postings.decode(buffer, dataOffset + buffer.getInt(position + 12), buffer.getInt(position),
+                    buffer.getInt(position + 8), pageIds, ranks, offset);
+        }
+
+        private int blockOffset(int block) {
+            return blocksOffset + (firstBlock + block) * BLOCK_SIZE;
+        }
+    }
+}
@@ -0,0 +1,523 @@
+package searchengine.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.repositories.IndexRepository;
+import searchengine.repositories.LemmaRepository;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Обратный индекс: лемма сайта -> отсортированный список страниц с рангами.
+ * Сохраняется в файлы сегментов {@link IndexSegment}, если задан их каталог.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InvertedIndex {
+    private static final int LOAD_BATCH_SIZE = 50_000;
+
+    private final LemmaRepository lemmaRepository;
+    private final IndexRepository indexRepository;
+    private final SearchSettings settings;
+
+    private volatile State state = State.of(null);
+    private final AtomicInteger epoch = new AtomicInteger();
+    private final Map<Integer, AtomicLong> siteVersions = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicInteger activeChanges = new AtomicInteger();
+    // Изменения индекса идут параллельно под блокировкой чтения, замена сегмента — под блокировкой записи.
+    private final ReadWriteLock changeLock = new ReentrantReadWriteLock();
+    private volatile boolean ready;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "inverted-index-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Сегмент (может отсутствовать) и изменения поверх него: леммы и списки, изменённые
+     * после записи сегмента, и сайты, удалённые из него.
+     */
+    private record State(IndexSegment segment, Map<Integer, Map<String, Integer>> siteLemmas,
+                         Map<Integer, Postings> postings, Set<Integer> droppedSites) {
+        static State of(IndexSegment segment) {
+            return new State(segment, new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), ConcurrentHashMap.newKeySet());
+        }
+
+        Postings.Snapshot snapshot(int lemmaId) {
+            Postings live = postings.get(lemmaId);
+            if (live != null) {
+                return live.snapshot();
+            }
+            return segment == null ? null : segment.postings(lemmaId);
+        }
+
+        Integer lemmaId(int siteId, String lemma) {
+            Map<String, Integer> dictionary = siteLemmas.get(siteId);
+            Integer lemmaId = dictionary == null ? null : dictionary.get(lemma);
+            if (lemmaId == null && segment != null && !droppedSites.contains(siteId)) {
+                lemmaId = segment.findLemmaId(siteId, lemma);
+            }
+            return lemmaId;
+        }
+
+        /**
+         * Изменяемый список леммы; список из сегмента при первом изменении копируется в кучу.
+         */
+        Postings livePostings(int lemmaId) {
+            return postings.computeIfAbsent(lemmaId, id -> {
+                Postings.Snapshot stored = segment == null ? null : segment.postings(id);
+                return stored == null ? new Postings() : Postings.copyOf(stored);
+            });
+        }
+
+        boolean isStored(int lemmaId) {
+            return segment != null && segment.postings(lemmaId) != null;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        new Thread(() -> {
+            try {
+                if (!openSegment()) {
+                    load();
+                    if (activeChanges.get() == 0) {
+                        compact();
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.error("Не удалось загрузить поисковый индекс", e);
+            }
+        }, "inverted-index-loader").start();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void load() {
+        while (!ready) {
+            int startEpoch = epoch.get();
+            Map<Integer, Map<String, Integer>> loadedLemmas = loadLemmas();
+            Map<Integer, Postings> loadedPostings = loadPostings();
+            State current = state;
+            synchronized (this) {
+                if (ready || epoch.get() != startEpoch) {
+                    continue;
+                }
+                loadedLemmas.forEach((siteId, lemmas) -> siteDictionary(current, siteId).putAll(lemmas));
+                loadedPostings.forEach((lemmaId, loaded) -> mergePostings(current, lemmaId, loaded));
+                generation.incrementAndGet();
+                ready = true;
+            }
+            long bytes = current.postings().values().stream().mapToLong(list -> list.snapshot().byteSize()).sum();
+            log.info("Поисковый индекс загружен: {} лемм, {} КБ", current.postings().size(), bytes / 1024);
+        }
+    }
+
+    private Map<Integer, Map<String, Integer>> loadLemmas() {
+        Map<Integer, Map<String, Integer>> lemmas = new HashMap<>();
+        int lastId = 0;
+        List<LemmaRepository.LemmaEntry> batch;
+        do {
+            batch = lemmaRepository.findEntriesAfter(lastId, PageRequest.of(0, LOAD_BATCH_SIZE));
+            for (LemmaRepository.LemmaEntry entry : batch) {
+                lemmas.computeIfAbsent(entry.getSiteId(), id -> new HashMap<>()).put(entry.getLemma(), entry.getId());
+                lastId = entry.getId();
+            }
+        } while (batch.size() == LOAD_BATCH_SIZE);
+        return lemmas;
+    }
+
+    private Map<Integer, Postings> loadPostings() {
+        Map<Integer, PackedBuffer> buffers = new HashMap<>();
+        int lastId = 0;
+        List<IndexRepository.IndexEntry> batch;
+        do {
+            batch = indexRepository.findEntriesAfter(lastId, PageRequest.of(0, LOAD_BATCH_SIZE));
+            for (IndexRepository.IndexEntry entry : batch) {
+                buffers.computeIfAbsent(entry.getLemmaId(), id -> new PackedBuffer())
+                        .add(Postings.pack(entry.getPageId(), entry.getRank()));
+                lastId = entry.getId();
+            }
+        } while (batch.size() == LOAD_BATCH_SIZE);
+
+        Map<Integer, Postings> loaded = new HashMap<>();
+        buffers.forEach((lemmaId, buffer) -> loaded.put(lemmaId, Postings.fromPacked(buffer.values, buffer.size)));
+        return loaded;
+    }
+
+    private void mergePostings(State current, int lemmaId, Postings loaded) {
+        Postings live = current.postings().putIfAbsent(lemmaId, loaded);
+        if (live != null) {
+            Postings.Snapshot snapshot = loaded.snapshot();
+            int[] pageIds = new int[snapshot.size()];
+            float[] ranks = new float[snapshot.size()];
+            snapshot.decode(pageIds, ranks);
+            for (int i = 0; i < pageIds.length; i++) {
+                live.add(pageIds[i], ranks[i]);
+            }
+        }
+    }
+
+    /**
+     * Открывает действующий сегмент, если он есть и данные индекса в БД с момента его записи не менялись.
+     */
+    boolean openSegment() {
+        SegmentDirectory segments = segments();
+        if (segments == null) {
+            return false;
+        }
+        changeLock.writeLock().lock();
+        try {
+            Path file = segments.current();
+            if (file == null || activeChanges.get() > 0) {
+                return false;
+            }
+            IndexSegment segment = IndexSegment.open(file);
+            State current = state;
+            state = new State(segment, current.siteLemmas(), current.postings(), current.droppedSites());
+            generation.incrementAndGet();
+            ready = true;
+            log.info("Поисковый индекс открыт из сегмента {}: {} лемм, {} КБ", file, segment.lemmaCount(), segment.byteSize() / 1024);
+            return true;
+        } catch (IOException e) {
+            log.warn("Не удалось открыть сегмент индекса, индекс будет загружен из БД", e);
+            return false;
+        } finally {
+            changeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Вызывается перед изменением данных индекса в БД: действующий сегмент перестаёт
+     * соответствовать БД и при следующем старте не открывается.
+     */
+    public void beginChanges() {
+        changeLock.writeLock().lock();
+        try {
+            activeChanges.incrementAndGet();
+            SegmentDirectory segments = segments();
+            if (segments != null) {
+                segments.invalidate();
+            }
+        } finally {
+            changeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param persist записать сегмент, если других изменений не идёт: все записи в БД завершены
+     */
+    public void endChanges(boolean persist) {
+        if (activeChanges.decrementAndGet() == 0 && persist) {
+            compact();
+        }
+    }
+
+    /**
+     * Записывает сегмент через segment-compaction-delay-ms; изменения, сделанные за это время,
+     * попадают в тот же сегмент.
+     */
+    public void scheduleCompaction() {
+        if (segments() == null || !compactionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        compactor.schedule(() -> {
+            compactionScheduled.set(false);
+            try {
+                compact();
+            } catch (RuntimeException e) {
+                log.error("Не удалось записать сегмент поискового индекса", e);
+            }
+        }, settings.getSegmentCompactionDelayMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        compactor.shutdownNow();
+        if (compactionScheduled.getAndSet(false)) {
+            compact();
+        }
+    }
+
+    /**
+     * Записывает текущее состояние индекса в новый сегмент и переключается на него.
+     */
+    public void compact() {
+        SegmentDirectory segments = segments();
+        if (segments == null || !ready) {
+            return;
+        }
+        changeLock.writeLock().lock();
+        Path file = null;
+        try {
+            if (activeChanges.get() > 0) {
+                return;
+            }
+            State current = state;
+            List<IndexSegment.Entry> entries = entries(current);
+            file = segments.newSegmentFile();
+            IndexSegment.write(file, entries);
+            IndexSegment segment = IndexSegment.open(file);
+            state = State.of(segment);
+            segments.commit(file);
+            log.info("Сегмент поискового индекса записан: {}, {} лемм, {} КБ", file, segment.lemmaCount(), segment.byteSize() / 1024);
+        } catch (IOException e) {
+            log.error("Не удалось записать сегмент поискового индекса", e);
+            if (file != null) {
+                segments.deleteQuietly(file);
+            }
+        } finally {
+            changeLock.writeLock().unlock();
+        }
+    }
+
+    private static List<IndexSegment.Entry> entries(State current) {
+        List<IndexSegment.Entry> entries = new ArrayList<>();
+        current.siteLemmas().forEach((siteId, dictionary) -> dictionary.forEach((lemma, lemmaId) -> {
+            Postings.Snapshot snapshot = current.snapshot(lemmaId);
+            if (snapshot != null && snapshot.size() > 0) {
+                entries.add(new IndexSegment.Entry(siteId, lemma, lemmaId, snapshot));
+            }
+        }));
+        if (current.segment() != null) {
+            current.segment().forEachLemma((siteId, lemma, lemmaId) -> {
+                Map<String, Integer> dictionary = current.siteLemmas().get(siteId);
+                if (current.droppedSites().contains(siteId) || (dictionary != null && dictionary.containsKey(lemma))) {
+                    return;
+                }
+                Postings.Snapshot snapshot = current.snapshot(lemmaId);
+                if (snapshot.size() > 0) {
+                    entries.add(new IndexSegment.Entry(siteId, lemma, lemmaId, snapshot));
+                }
+            });
+        }
+        return entries;
+    }
+
+    /**
+     * @param lemmaIds id лемм сайта
+     * @param ranks    число вхождений каждой леммы на странице
+     */
+    public void addPage(int siteId, int pageId, Map<String, Integer> lemmaIds, Map<String, Integer> ranks) {
+        changeLock.readLock().lock();
+        try {
+            State current = state;
+            siteVersion(siteId).incrementAndGet();
+            Map<String, Integer> dictionary = siteDictionary(current, siteId);
+            ranks.forEach((lemma, rank) -> {
+                Integer lemmaId = lemmaIds.get(lemma);
+                if (lemmaId != null) {
+                    // Лемма, удалённая из БД после очистки, возвращается с новым id; прежний список пуст.
+                    dictionary.put(lemma, lemmaId);
+                    current.livePostings(lemmaId).add(pageId, rank);
+                }
+            });
+        } finally {
+            changeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param lemmaIds леммы, которые нужно убрать со страницы, и их id
+     */
+    public void removePage(int siteId, int pageId, Map<String, Integer> lemmaIds) {
+        changeLock.readLock().lock();
+        try {
+            State current = state;
+            epoch.incrementAndGet();
+            siteVersion(siteId).incrementAndGet();
+            Map<String, Integer> dictionary = siteDictionary(current, siteId);
+            lemmaIds.forEach((lemma, lemmaId) -> {
+                Postings list = current.isStored(lemmaId) ? current.livePostings(lemmaId) : current.postings().get(lemmaId);
+                // Опустевший список леммы из сегмента остаётся в куче, иначе поиск снова прочитал бы её страницы из сегмента.
+                if (list != null && list.remove(pageId) && list.size() == 0 && !current.isStored(lemmaId)) {
+                    current.postings().remove(lemmaId, list);
+                    dictionary.remove(lemma, lemmaId);
+                }
+            });
+        } finally {
+            changeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Убирает из индекса все леммы и списки страниц сайта.
+     */
+    public void removeSite(int siteId) {
+        changeLock.readLock().lock();
+        try {
+            State current = state;
+            epoch.incrementAndGet();
+            siteVersion(siteId).incrementAndGet();
+            Map<String, Integer> dictionary = current.siteLemmas().remove(siteId);
+            if (dictionary != null) {
+                dictionary.values().forEach(current.postings()::remove);
+            }
+            if (current.segment() != null) {
+                current.droppedSites().add(siteId);
+            }
+        } finally {
+            changeLock.readLock().unlock();
+        }
+    }
+
+    public synchronized void clear() {
+        changeLock.writeLock().lock();
+        try {
+            epoch.incrementAndGet();
+            generation.incrementAndGet();
+            SegmentDirectory segments = segments();
+            if (segments != null) {
+                segments.invalidate();
+            }
+            state = State.of(null);
+            ready = true;
+        } finally {
+            changeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Версия данных указанных сайтов: растёт при каждом изменении их страниц, а также при загрузке
+     * и очистке индекса. Счётчики сайтов не сбрасываются, поэтому сумма не может вернуться к прежнему значению.
+     */
+    public long version(Collection<Integer> siteIds) {
+        long version = generation.get();
+        for (int siteId : siteIds) {
+            AtomicLong siteVersion = siteVersions.get(siteId);
+            if (siteVersion != null) {
+                version += siteVersion.get();
+            }
+        }
+        return version;
+    }
+
+    public Integer findLemmaId(int siteId, String lemma) {
+        return state.lemmaId(siteId, lemma);
+    }
+
+    /**
+     * Находит страницы указанных сайтов, содержащие все леммы. Списки пересекаются
+     * в порядке следования лемм, поэтому первой стоит передавать самую редкую.
+     */
+    public SearchHits findPages(Collection<Integer> siteIds, List<String> lemmas) {
+        State current = state;
+        List<SearchHits> siteHits = new ArrayList<>();
+        int total = 0;
+        for (int siteId : siteIds) {
+            SearchHits hits = findSitePages(current, siteId, lemmas);
+            if (!hits.isEmpty()) {
+                siteHits.add(hits);
+                total += hits.size();
+            }
+        }
+        if (siteHits.size() == 1) {
+            return siteHits.get(0);
+        }
+        int[] pageIds = new int[total];
+        float[] relevance = new float[total];
+        int offset = 0;
+        for (SearchHits hits : siteHits) {
+            System.arraycopy(hits.pageIds(), 0, pageIds, offset, hits.size());
+            System.arraycopy(hits.relevance(), 0, relevance, offset, hits.size());
+            offset += hits.size();
+        }
+        return new SearchHits(pageIds, relevance, total);
+    }
+
+    private static SearchHits findSitePages(State current, int siteId, List<String> lemmas) {
+        if (lemmas.isEmpty()) {
+            return SearchHits.EMPTY;
+        }
+        int[] pageIds = null;
+        float[] relevance = null;
+        int size = 0;
+        for (String lemma : lemmas) {
+            Integer lemmaId = current.lemmaId(siteId, lemma);
+            Postings.Snapshot snapshot = lemmaId == null ? null : current.snapshot(lemmaId);
+            if (snapshot == null) {
+                return SearchHits.EMPTY;
+            }
+            if (pageIds == null) {
+                size = snapshot.size();
+                pageIds = new int[size];
+                relevance = new float[size];
+                snapshot.decode(pageIds, relevance);
+            } else {
+                size = intersect(pageIds, relevance, size, snapshot.cursor());
+            }
+            if (size == 0) {
+                return SearchHits.EMPTY;
+            }
+        }
+        return new SearchHits(pageIds, relevance, size);
+    }
+
+    /**
+     * Оставляет в pageIds только страницы, присутствующие в other, и прибавляет их ранги.
+     * Курсор перескакивает блоки other по указателям пропуска и ищет галопом внутри блока,
+     * так что короткий список дёшево пересекается с длинным.
+     */
+    static int intersect(int[] pageIds, float[] relevance, int size, Postings.Cursor other) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int found = other.advance(pageIds[i]);
+            if (found == Postings.NO_MORE_PAGES) {
+                break;
+            }
+            if (found == pageIds[i]) {
+                pageIds[kept] = pageIds[i];
+                relevance[kept] = relevance[i] + other.rank();
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    private AtomicLong siteVersion(int siteId) {
+        return siteVersions.computeIfAbsent(siteId, id -> new AtomicLong());
+    }
+
+    private static Map<String, Integer> siteDictionary(State current, int siteId) {
+        return current.siteLemmas().computeIfAbsent(siteId, id -> new ConcurrentHashMap<>());
+    }
+
+    private SegmentDirectory segments() {
+        String directory = settings.getSegmentDirectory();
+        return directory == null || directory.isBlank() ? null : new SegmentDirectory(Path.of(directory));
+    }
+
+    private static final class PackedBuffer {
+        private long[] values = new long[8];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
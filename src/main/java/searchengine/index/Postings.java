@@ -0,0 +1,404 @@
+package searchengine.index;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Список страниц леммы блоками по {@link #BLOCK_SIZE}: разности id и ранги в varint,
+ * последние id блоков служат указателями пропуска.
+ */
+public final class Postings {
+    static final int BLOCK_SIZE = 128;
+    public static final int NO_MORE_PAGES = Integer.MAX_VALUE;
+
+    private volatile HeapSnapshot snapshot = HeapSnapshot.EMPTY;
+
+    private record Block(int firstPageId, int lastPageId, int size, byte[] data) {
+    }
+
+    public Postings() {
+    }
+
+    private Postings(HeapSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Собирает список из неупорядоченных пар (страница, ранг), упакованных в long:
+     * старшие 32 бита - id страницы, младшие - биты ранга.
+     */
+    static Postings fromPacked(long[] packed, int size) {
+        Arrays.sort(packed, 0, size);
+        int[] pageIds = new int[size];
+        float[] ranks = new float[size];
+        for (int i = 0; i < size; i++) {
+            pageIds[i] = (int) (packed[i] >>> 32);
+            ranks[i] = Float.intBitsToFloat((int) packed[i]);
+        }
+        return fromSorted(pageIds, ranks, size);
+    }
+
+    /**
+     * Копия снимка в памяти процесса, которую можно изменять.
+     */
+    static Postings copyOf(Snapshot snapshot) {
+        int[] pageIds = new int[snapshot.size()];
+        float[] ranks = new float[snapshot.size()];
+        snapshot.decode(pageIds, ranks);
+        return fromSorted(pageIds, ranks, pageIds.length);
+    }
+
+    private static Postings fromSorted(int[] pageIds, float[] ranks, int size) {
+        Block[] blocks = new Block[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        int[] lastPageIds = new int[blocks.length];
+        for (int b = 0; b < blocks.length; b++) {
+            int from = b * BLOCK_SIZE;
+            int to = Math.min(size, from + BLOCK_SIZE);
+            blocks[b] = new Block(pageIds[from], pageIds[to - 1], to - from, encode(pageIds, ranks, from, to));
+            lastPageIds[b] = pageIds[to - 1];
+        }
+        return new Postings(new HeapSnapshot(blocks, lastPageIds, size));
+    }
+
+    static long pack(int pageId, float rank) {
+        return ((long) pageId << 32) | (Float.floatToRawIntBits(rank) & 0xFFFFFFFFL);
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public int size() {
+        return snapshot.size();
+    }
+
+    public synchronized void add(int pageId, float rank) {
+        HeapSnapshot current = snapshot;
+        Block[] blocks = current.blocks;
+        int b = current.findBlock(pageId);
+        if (b == blocks.length && (b == 0 || blocks[b - 1].size() == BLOCK_SIZE)) {
+            // Дописываем в хвост новый блок, не трогая остальные.
+            snapshot = current.replace(b, 0, block(new int[]{pageId}, new float[]{rank}, 0, 1));
+            return;
+        }
+        b = Math.min(b, blocks.length - 1);
+        int[] pageIds = new int[BLOCK_SIZE + 1];
+        float[] ranks = new float[BLOCK_SIZE + 1];
+        int size = current.decodeBlock(b, pageIds, ranks, 0);
+        int position = Arrays.binarySearch(pageIds, 0, size, pageId);
+        if (position >= 0) {
+            ranks[position] = rank;
+            snapshot = current.replace(b, 1, block(pageIds, ranks, 0, size));
+            return;
+        }
+        int insertAt = -position - 1;
+        System.arraycopy(pageIds, insertAt, pageIds, insertAt + 1, size - insertAt);
+        System.arraycopy(ranks, insertAt, ranks, insertAt + 1, size - insertAt);
+        pageIds[insertAt] = pageId;
+        ranks[insertAt] = rank;
+        size++;
+        if (size <= BLOCK_SIZE) {
+            snapshot = current.replace(b, 1, block(pageIds, ranks, 0, size));
+        } else {
+            int half = size / 2;
+            snapshot = current.replace(b, 1, block(pageIds, ranks, 0, half), block(pageIds, ranks, half, size));
+        }
+    }
+
+    public synchronized boolean remove(int pageId) {
+        HeapSnapshot current = snapshot;
+        int b = current.findBlock(pageId);
+        if (b == current.blocks.length) {
+            return false;
+        }
+        int[] pageIds = new int[BLOCK_SIZE];
+        float[] ranks = new float[BLOCK_SIZE];
+        int size = current.decodeBlock(b, pageIds, ranks, 0);
+        int position = Arrays.binarySearch(pageIds, 0, size, pageId);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(pageIds, position + 1, pageIds, position, size - position - 1);
+        System.arraycopy(ranks, position + 1, ranks, position, size - position - 1);
+        size--;
+        snapshot = size == 0 ? current.replace(b, 1) : current.replace(b, 1, block(pageIds, ranks, 0, size));
+        return true;
+    }
+
+    private static Block block(int[] pageIds, float[] ranks, int from, int to) {
+        return new Block(pageIds[from], pageIds[to - 1], to - from, encode(pageIds, ranks, from, to));
+    }
+
+    /**
+     * Кодирует страницы [from, to) в данные блока. Id первой страницы в данные не входит.
+     */
+    static byte[] encode(int[] pageIds, float[] ranks, int from, int to) {
+        byte[] data = new byte[(to - from) * 10];
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                length = writeVarInt(data, length, pageIds[i] - pageIds[i - 1]);
+            }
+            length = writeVarInt(data, length, Math.max(0, Math.round(ranks[i])));
+        }
+        return Arrays.copyOf(data, length);
+    }
+
+    private static int writeVarInt(byte[] data, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            data[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[position++] = (byte) value;
+        return position;
+    }
+
+    private static int decode(byte[] data, int firstPageId, int size, int[] pageIds, float[] ranks, int offset) {
+        int position = 0;
+        int pageId = firstPageId;
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                int delta = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data[position++];
+                    delta |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                pageId += delta;
+            }
+            int rank = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[position++];
+                rank |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            pageIds[offset + i] = pageId;
+            ranks[offset + i] = rank;
+        }
+        return size;
+    }
+
+    /**
+     * То же для блока, лежащего в буфере (отображённом в память файле сегмента) с позиции position.
+     */
+    static int decode(ByteBuffer data, int position, int firstPageId, int size, int[] pageIds, float[] ranks, int offset) {
+        int pageId = firstPageId;
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                int delta = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data.get(position++);
+                    delta |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                pageId += delta;
+            }
+            int rank = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data.get(position++);
+                rank |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            pageIds[offset + i] = pageId;
+            ranks[offset + i] = rank;
+        }
+        return size;
+    }
+
+    /**
+     * Неизменяемое состояние списка: блоки и последние id страниц в них.
+     */
+    public abstract static class Snapshot {
+
+        public abstract int size();
+
+        /**
+         * Объём сжатых данных в байтах, без служебных полей объектов.
+         */
+        public abstract long byteSize();
+
+        abstract int blockCount();
+
+        abstract int lastPageId(int block);
+
+        /**
+         * Распаковывает блок в массивы начиная с offset и возвращает число страниц в нём.
+         */
+        abstract int decodeBlock(int block, int[] pageIds, float[] ranks, int offset);
+
+        /**
+         * Распаковывает весь список в массивы длиной не меньше {@link #size()}.
+         */
+        public void decode(int[] pageIds, float[] ranks) {
+            int offset = 0;
+            for (int b = 0; b < blockCount(); b++) {
+                offset += decodeBlock(b, pageIds, ranks, offset);
+            }
+        }
+
+        public Cursor cursor() {
+            return new Cursor(this);
+        }
+    }
+
+    private static final class HeapSnapshot extends Snapshot {
+        private static final HeapSnapshot EMPTY = new HeapSnapshot(new Block[0], new int[0], 0);
+
+        private final Block[] blocks;
+        private final int[] lastPageIds;
+        private final int size;
+
+        private HeapSnapshot(Block[] blocks, int[] lastPageIds, int size) {
+            this.blocks = blocks;
+            this.lastPageIds = lastPageIds;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public long byteSize() {
+            long bytes = lastPageIds.length * 4L;
+            for (Block block : blocks) {
+                bytes += block.data().length + 12;
+            }
+            return bytes;
+        }
+
+        @Override
+        int blockCount() {
+            return blocks.length;
+        }
+
+        @Override
+        int lastPageId(int block) {
+            return lastPageIds[block];
+        }
+
+        @Override
+        int decodeBlock(int block, int[] pageIds, float[] ranks, int offset) {
+            Block b = blocks[block];
+            return Postings.decode(b.data(), b.firstPageId(), b.size(), pageIds, ranks, offset);
+        }
+
+        /**
+         * Первый блок, последний id которого не меньше pageId, или число блоков.
+         */
+        private int findBlock(int pageId) {
+            int position = Arrays.binarySearch(lastPageIds, pageId);
+            return position >= 0 ? position : -position - 1;
+        }
+
+        /**
+         * Новый снимок, в котором removed блоков начиная с index заменены указанными.
+         */
+        private HeapSnapshot replace(int index, int removed, Block... inserted) {
+            int count = blocks.length - removed + inserted.length;
+            Block[] newBlocks = new Block[count];
+            int[] newLastPageIds = new int[count];
+            System.arraycopy(blocks, 0, newBlocks, 0, index);
+            System.arraycopy(lastPageIds, 0, newLastPageIds, 0, index);
+            System.arraycopy(blocks, index + removed, newBlocks, index + inserted.length, blocks.length - index - removed);
+            System.arraycopy(lastPageIds, index + removed, newLastPageIds, index + inserted.length, blocks.length - index - removed);
+            int newSize = size;
+            for (int i = 0; i < removed; i++) {
+                newSize -= blocks[index + i].size();
+            }
+            for (int i = 0; i < inserted.length; i++) {
+                newBlocks[index + i] = inserted[i];
+                newLastPageIds[index + i] = inserted[i].lastPageId();
+                newSize += inserted[i].size();
+            }
+            return new HeapSnapshot(newBlocks, newLastPageIds, newSize);
+        }
+    }
+
+    /**
+     * Проход по снимку с пропусками. Распаковывается только блок, в который попала цель.
+     */
+    public static final class Cursor {
+        private final Snapshot snapshot;
+        private final int blockCount;
+        private final int[] pageIds = new int[BLOCK_SIZE];
+        private final float[] ranks = new float[BLOCK_SIZE];
+        private int block = -1;
+        private int blockSize;
+        private int position;
+
+        private Cursor(Snapshot snapshot) {
+            this.snapshot = snapshot;
+            this.blockCount = snapshot.blockCount();
+        }
+
+        /**
+         * Переходит к первой странице с id не меньше target и возвращает её id
+         * или {@link #NO_MORE_PAGES}. Цели должны идти по неубыванию.
+         */
+        public int advance(int target) {
+            if (block == blockCount) {
+                return NO_MORE_PAGES;
+            }
+            if (block < 0 || target > snapshot.lastPageId(block)) {
+                block = gallopBlocks(Math.max(block + 1, 0), target);
+                if (block == blockCount) {
+                    return NO_MORE_PAGES;
+                }
+                blockSize = snapshot.decodeBlock(block, pageIds, ranks, 0);
+                position = 0;
+            }
+            position = gallop(pageIds, position, blockSize, target);
+            return pageIds[position];
+        }
+
+        /**
+         * Ранг страницы, на которой стоит курсор.
+         */
+        public float rank() {
+            return ranks[position];
+        }
+
+        /**
+         * Первый блок начиная с from, последний id которого не меньше key, или число блоков.
+         */
+        private int gallopBlocks(int from, int key) {
+            int bound = 1;
+            while (from + bound < blockCount && snapshot.lastPageId(from + bound) < key) {
+                bound <<= 1;
+            }
+            int low = from + (bound >> 1);
+            int high = Math.min(from + bound + 1, blockCount);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (snapshot.lastPageId(middle) < key) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Первая позиция в [from, to), значение на которой не меньше key, или to.
+         */
+        private static int gallop(int[] values, int from, int to, int key) {
+            int bound = 1;
+            while (from + bound < to && values[from + bound] < key) {
+                bound <<= 1;
+            }
+            int position = Arrays.binarySearch(values, from + (bound >> 1), Math.min(from + bound + 1, to), key);
+            return position >= 0 ? position : -position - 1;
+        }
+    }
+}
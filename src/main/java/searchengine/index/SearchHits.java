@@ -0,0 +1,12 @@
+package searchengine.index;
+
+/**
+ * Страницы, содержащие все леммы запроса, и их абсолютная релевантность.
+ */
+public record SearchHits(int[] pageIds, float[] relevance, int size) {
+    public static final SearchHits EMPTY = new SearchHits(new int[0], new float[0], 0);
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
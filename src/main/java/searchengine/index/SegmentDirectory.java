@@ -0,0 +1,76 @@
+package searchengine.index;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Каталог сегментов индекса; действующий сегмент указан в файле CURRENT.
+ */
+@Slf4j
+final class SegmentDirectory {
+    private static final String CURRENT = "CURRENT";
+    private static final String SUFFIX = ".seg";
+
+    private final Path directory;
+
+    SegmentDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Действующий сегмент или null.
+     */
+    Path current() throws IOException {
+        Path marker = directory.resolve(CURRENT);
+        if (!Files.exists(marker)) {
+            return null;
+        }
+        Path segment = directory.resolve(Files.readString(marker, StandardCharsets.UTF_8).trim());
+        return Files.exists(segment) ? segment : null;
+    }
+
+    Path newSegmentFile() throws IOException {
+        Files.createDirectories(directory);
+        return Files.createTempFile(directory, "segment-", SUFFIX);
+    }
+
+    /**
+     * Делает сегмент действующим и удаляет остальные.
+     */
+    void commit(Path segment) throws IOException {
+        Path marker = directory.resolve(CURRENT);
+        Path temporary = directory.resolve(CURRENT + ".tmp");
+        Files.writeString(temporary, segment.getFileName().toString(), StandardCharsets.UTF_8);
+        Files.move(temporary, marker, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                if (!file.getFileName().equals(segment.getFileName())) {
+                    deleteQuietly(file);
+                }
+            }
+        }
+    }
+
+    void invalidate() {
+        try {
+            Files.deleteIfExists(directory.resolve(CURRENT));
+        } catch (IOException e) {
+            log.warn("Не удалось удалить отметку действующего сегмента в {}", directory, e);
+        }
+    }
+
+    void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Файл ещё отображён в память (Windows); он будет удалён при следующей записи сегмента.
+            log.debug("Не удалось удалить файл сегмента {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package searchengine.index;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Позиции слов страницы по леммам в varint: [число групп], затем для каждой группы
+ * [id леммы][длина группы в байтах][число вхождений] и пары [смещение][длина слова].
+ */
+public final class TokenPositions {
+    static final int MAX_HITS = 1 << 20;
+    /**
+     * Номер леммы в запросе упаковывается в 12 бит; более далёкие леммы не подсвечиваются.
+     */
+    public static final int MAX_TERM = 0xFFF;
+
+    private TokenPositions() {
+    }
+
+    /**
+     * Вхождения лемм запроса, упорядоченные по смещению. term - индекс леммы в запросе.
+     */
+    public record Hits(int[] starts, int[] ends, int[] terms, int size) {
+    }
+
+    public static final class Writer {
+        private final ByteBuffer out = new ByteBuffer(64);
+        private final ByteBuffer group = new ByteBuffer(64);
+        private int groups;
+
+        /**
+         * Добавляет группу вхождений одной леммы; starts должны быть отсортированы.
+         */
+        public void addGroup(int lemmaId, int[] starts, int[] lengths, int count) {
+            group.size = 0;
+            group.writeVarInt(count);
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                group.writeVarInt(starts[i] - previous);
+                group.writeVarInt(lengths[i]);
+                previous = starts[i];
+            }
+            out.writeVarInt(lemmaId);
+            out.writeVarInt(group.size);
+            out.write(group.bytes, group.size);
+            groups++;
+        }
+
+        public byte[] toByteArray() {
+            ByteBuffer result = new ByteBuffer(out.size + 5);
+            result.writeVarInt(groups);
+            result.write(out.bytes, out.size);
+            return Arrays.copyOf(result.bytes, result.size);
+        }
+    }
+
+    /**
+     * Вхождения лемм с номерами до {@link #MAX_TERM}, не более MAX_HITS первых по порядку групп.
+     */
+    public static Hits findHits(byte[] data, Map<Integer, Integer> termsByLemmaId) {
+        long[] packed = new long[16];
+        int[] lengths = new int[16];
+        int size = 0;
+        int[] position = {0};
+        int groups = readVarInt(data, position);
+        for (int g = 0; g < groups && size < MAX_HITS; g++) {
+            int lemmaId = readVarInt(data, position);
+            int groupLength = readVarInt(data, position);
+            int groupEnd = position[0] + groupLength;
+            Integer term = termsByLemmaId.get(lemmaId);
+            if (term == null || term < 0 || term > MAX_TERM) {
+                position[0] = groupEnd;
+                continue;
+            }
+            int count = readVarInt(data, position);
+            int start = 0;
+            for (int i = 0; i < count && size < MAX_HITS; i++) {
+                start += readVarInt(data, position);
+                int length = readVarInt(data, position);
+                if (size == packed.length) {
+                    packed = Arrays.copyOf(packed, size * 2);
+                    lengths = Arrays.copyOf(lengths, size * 2);
+                }
+                lengths[size] = length;
+                packed[size] = ((long) start << 32) | ((long) term << 20) | size;
+                size++;
+            }
+            position[0] = groupEnd;
+        }
+        Arrays.sort(packed, 0, size);
+        int[] starts = new int[size];
+        int[] ends = new int[size];
+        int[] terms = new int[size];
+        for (int i = 0; i < size; i++) {
+            starts[i] = (int) (packed[i] >>> 32);
+            terms[i] = (int) ((packed[i] >>> 20) & 0xFFF);
+            ends[i] = starts[i] + lengths[(int) (packed[i] & 0xFFFFF)];
+        }
+        return new Hits(starts, ends, terms, size);
+    }
+
+    private static int readVarInt(byte[] data, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[position[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static final class ByteBuffer {
+        private byte[] bytes;
+        private int size;
+
+        ByteBuffer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void writeVarInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void write(byte[] source, int length) {
+            ensureCapacity(length);
+            System.arraycopy(source, 0, bytes, size, length);
+            size += length;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package searchengine.index;
+
+/**
+ * Отбор k самых релевантных страниц ограниченной min-кучей ключей long: релевантность и id страницы.
+ */
+public final class TopPages {
+
+    private TopPages() {
+    }
+
+    /**
+     * Возвращает не более k ключей, упорядоченных по убыванию релевантности.
+     */
+    public static long[] select(SearchHits hits, int k) {
+        int capacity = Math.min(Math.max(k, 0), hits.size());
+        long[] heap = new long[capacity];
+        if (capacity == 0) {
+            return heap;
+        }
+        int size = 0;
+        for (int i = 0; i < hits.size(); i++) {
+            long key = key(hits.relevance()[i], hits.pageIds()[i]);
+            if (size < capacity) {
+                heap[size] = key;
+                siftUp(heap, size++);
+            } else if (key > heap[0]) {
+                heap[0] = key;
+                siftDown(heap, 0, size);
+            }
+        }
+        // Разбираем кучу с конца: минимальный элемент уходит в хвост, получается порядок по убыванию.
+        for (int end = size - 1; end > 0; end--) {
+            long min = heap[0];
+            heap[0] = heap[end];
+            heap[end] = min;
+            siftDown(heap, 0, end);
+        }
+        return heap;
+    }
+
+    public static long key(float relevance, int pageId) {
+        return ((long) Float.floatToIntBits(relevance) << 32) | (pageId & 0xFFFFFFFFL);
+    }
+
+    public static int pageId(long key) {
+        return (int) key;
+    }
+
+    public static float relevance(long key) {
+        return Float.intBitsToFloat((int) (key >>> 32));
+    }
+
+    private static void siftUp(long[] heap, int index) {
+        long value = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] <= value) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = value;
+    }
+
+    private static void siftDown(long[] heap, int index, int size) {
+        long value = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (value <= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+}
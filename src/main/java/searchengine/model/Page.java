@@ -23,6 +23,18 @@ public class Page {
     @Column(columnDefinition = "INT NOT NULL")
     private int code;
 
+    /**
+     * Несжатое тело страниц, сохранённых до появления page_content; у новых страниц пустое.
+     */
     @Column(columnDefinition = "MEDIUMTEXT NOT NULL")
     private String content;
+
+    @Column(columnDefinition = "VARCHAR(255)")
+    private String etag;
+
+    @Column(name = "last_modified", columnDefinition = "VARCHAR(64)")
+    private String lastModified;
+
+    @Column(name = "content_hash", columnDefinition = "CHAR(64)")
+    private String contentHash;
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import javax.persistence.*;
+
+/**
+ * Исходное тело страницы, сжатое Deflate.
+ */
+@Entity
+@Table(name = "page_content")
+@Getter
+@Setter
+@NoArgsConstructor
+public class PageContent {
+    @Id
+    @Column(name = "page_id")
+    private int pageId;
+
+    @Convert(converter = DeflateConverter.class)
+    @Column(columnDefinition = "MEDIUMBLOB NOT NULL")
+    private String body;
+}
@@ -0,0 +1,33 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import javax.persistence.*;
+
+@Entity
+@Table(name = "page_text")
+@Getter
+@Setter
+@NoArgsConstructor
+public class PageText {
+    @Id
+    @Column(name = "page_id")
+    private int pageId;
+
+    @Column(columnDefinition = "TEXT")
+    private String title;
+
+    @Column(columnDefinition = "MEDIUMTEXT NOT NULL")
+    private String text;
+
+    @Lob
+    @Column(columnDefinition = "MEDIUMBLOB")
+    private byte[] positions;
+
+    public PageText(int pageId, String title, String text) {
+        this.pageId = pageId;
+        this.title = title;
+        this.text = text;
+    }
+}
@@ -29,4 +29,21 @@ public class Site {
 
     @Column(columnDefinition = "VARCHAR(255) NOT NULL")
     private String name;
+
+    /**
+     * Поиск идёт только по активным записям. Полная переиндексация заполняет новые
+     * неактивные записи и делает их активными после завершения обхода.
+     */
+    @Column(columnDefinition = "BOOLEAN NOT NULL DEFAULT TRUE")
+    private boolean active = true;
+
+    /**
+     * Число страниц и лемм сайта на момент окончания последнего обхода; статистика читает их вместо COUNT.
+     * null - ещё не подсчитаны: обход не завершился или запись сохранена версией без этих столбцов.
+     */
+    @Column(name = "page_count")
+    private Integer pageCount;
+
+    @Column(name = "lemma_count")
+    private Integer lemmaCount;
 }
\ No newline at end of file
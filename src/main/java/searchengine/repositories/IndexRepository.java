@@ -1,5 +1,6 @@
 package searchengine.repositories;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
@@ -7,15 +8,29 @@ import searchengine.model.SearchIndex;
 import searchengine.model.Page;
 import searchengine.model.Site;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface IndexRepository extends JpaRepository<SearchIndex, Integer> {
-    @Query("SELECT i.page FROM SearchIndex i WHERE i.lemma.lemma = ?1 AND i.page.site IN ?2")
-    List<Page> findPagesByLemmaAndSiteIn(String lemmaText, List<Site> sites);
+    List<SearchIndex> findAllByPage(Page page);
 
-    @Query("SELECT i.rank FROM SearchIndex i WHERE i.page.id = ?1 AND i.lemma.id = ?2")
-    Float findRankByPageAndLemma(int pageId, int lemmaId);
+    @Query("SELECT i.page.id AS pageId, SUM(i.rank) AS relevance FROM SearchIndex i " +
+            "WHERE i.lemma.lemma IN ?1 AND i.lemma.site IN ?2 GROUP BY i.page.id HAVING COUNT(i) = ?3")
+    List<PageRelevance> findRelevanceByLemmasAndSiteIn(Collection<String> lemmas, List<Site> sites, long lemmaCount);
 
-    List<SearchIndex> findAllByPage(Page page);
-}
\ No newline at end of file
+    @Query("SELECT i.id AS id, i.lemma.id AS lemmaId, i.page.id AS pageId, i.rank AS rank FROM SearchIndex i WHERE i.id > ?1 ORDER BY i.id")
+    List<IndexEntry> findEntriesAfter(int lastId, Pageable pageable);
+
+    interface PageRelevance {
+        int getPageId();
+        Double getRelevance();
+    }
+
+    interface IndexEntry {
+        int getId();
+        int getLemmaId();
+        int getPageId();
+        float getRank();
+    }
+}
@@ -1,5 +1,6 @@
 package searchengine.repositories;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -8,17 +9,19 @@ import searchengine.model.Site;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 
 @Repository
 public interface LemmaRepository extends JpaRepository<Lemma, Integer> {
-    Optional<Lemma> findByLemmaAndSite(String lemma, Site site);
-
-
-    @Query("SELECT COUNT(l) FROM Lemma l WHERE l.lemma = ?1 AND l.site IN ?2")
-    int countByLemmaAndSiteIn(String lemma, List<Site> sites);
-
     List<Lemma> findAllBySiteAndLemmaIn(Site site, Collection<String> lemmas);
 
     long countBySite_Id(int siteId);
-}
\ No newline at end of file
+
+    @Query("SELECT l.id AS id, l.site.id AS siteId, l.lemma AS lemma FROM Lemma l WHERE l.id > ?1 ORDER BY l.id")
+    List<LemmaEntry> findEntriesAfter(int lastId, Pageable pageable);
+
+    interface LemmaEntry {
+        int getId();
+        int getSiteId();
+        String getLemma();
+    }
+}
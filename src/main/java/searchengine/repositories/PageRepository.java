@@ -1,13 +1,51 @@
 package searchengine.repositories;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import searchengine.model.Page;
 import searchengine.model.Site;
+
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface PageRepository extends JpaRepository<Page, Integer> {
     Optional<Page> findByPathAndSite(String path, Site site);
     int countBySiteId(int siteId);
-}
\ No newline at end of file
+
+    @Query("SELECT p.id AS id, p.site.id AS siteId, p.path AS path FROM Page p WHERE p.id IN ?1")
+    List<PageMetadata> findMetadataByIdIn(Collection<Integer> ids);
+
+    @Query("SELECT p.id AS id, p.path AS path, p.code AS code, p.etag AS etag, p.lastModified AS lastModified, " +
+            "p.contentHash AS contentHash FROM Page p WHERE p.site = ?1")
+    List<KnownPage> findKnownPagesBySite(Site site);
+
+    @Query("SELECT p.id AS id, p.content AS content FROM Page p WHERE p.id IN ?1 AND p.content <> ''")
+    List<LegacyContent> findLegacyContentByIdIn(Collection<Integer> ids);
+
+    @Query("SELECT p.id FROM Page p WHERE p.id > ?1 AND p.content <> '' ORDER BY p.id")
+    List<Integer> findIdsWithLegacyContentAfter(int lastId, Pageable pageable);
+
+    interface KnownPage {
+        int getId();
+        String getPath();
+        int getCode();
+        String getEtag();
+        String getLastModified();
+        String getContentHash();
+    }
+
+    interface LegacyContent {
+        int getId();
+        String getContent();
+    }
+
+    interface PageMetadata {
+        int getId();
+        int getSiteId();
+        String getPath();
+    }
+}
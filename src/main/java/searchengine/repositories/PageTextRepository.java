@@ -0,0 +1,16 @@
+package searchengine.repositories;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import searchengine.model.PageText;
+
+import java.util.List;
+
+@Repository
+public interface PageTextRepository extends JpaRepository<PageText, Integer> {
+    @Query("SELECT p.id FROM Page p WHERE p.id > ?1 AND p.code = 200 " +
+            "AND NOT EXISTS (SELECT t.pageId FROM PageText t WHERE t.pageId = p.id) ORDER BY p.id")
+    List<Integer> findPageIdsWithoutTextAfter(int lastId, Pageable pageable);
+}
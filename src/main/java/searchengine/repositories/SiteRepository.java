@@ -1,16 +1,30 @@
 package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import searchengine.model.Site;
 import searchengine.model.Status;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface SiteRepository extends JpaRepository<Site, Integer> {
     Optional<Site> findByUrl(String url);
+    Optional<Site> findByUrlAndActiveTrue(String url);
+    List<Site> findByActiveTrue();
+    List<Site> findByActiveFalse();
     List<Site> findByStatus(Status status);
-    long countByStatusNot(Status status);
+    long countByActiveTrueAndStatusNot(Status status);
+
+    @Modifying
+    @Query("UPDATE Site s SET s.active = false WHERE s.active = true")
+    int deactivateAll();
+
+    @Modifying
+    @Query("UPDATE Site s SET s.active = true WHERE s.id IN ?1")
+    int activate(Collection<Integer> ids);
 }
\ No newline at end of file
@@ -0,0 +1,221 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.dto.indexing.StageStatistics;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Очередь обхода сайтов: выдаёт URL потокам загрузки по токенам ведра хоста
+ * с ограничением соединений на хост и общим.
+ */
+@Slf4j
+public class CrawlFrontier {
+    private final ScheduledExecutorService dispatcher;
+    private final ExecutorService fetchers;
+    private final Semaphore connections;
+    private final int maxConnections;
+    private final int connectionsPerHost;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+    private final List<SiteQueue> queues = new CopyOnWriteArrayList<>();
+    private volatile boolean running = true;
+
+    private record Host(TokenBucket bucket, Semaphore connections) {
+    }
+
+    /**
+     * @param fetchers           исполнитель загрузок, см. {@link FetchExecutorFactory}
+     * @param maxConnections     предел одновременных загрузок по всем сайтам
+     * @param connectionsPerHost предел одновременных загрузок с одного хоста
+     */
+    public CrawlFrontier(ExecutorService fetchers, int maxConnections, int connectionsPerHost) {
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "crawl-dispatcher"));
+        this.fetchers = fetchers;
+        this.connections = new Semaphore(maxConnections);
+        this.maxConnections = maxConnections;
+        this.connectionsPerHost = connectionsPerHost;
+    }
+
+    /**
+     * Начинает обход сайта с его главной страницы. Сайты одного хоста делят общее ведро токенов
+     * и общий предел соединений; при разных настройках частоты действуют наименьшие.
+     */
+    public void addSite(WebCrawler crawler, String startUrl, double requestsPerSecond, int burst) {
+        String hostName = host(startUrl);
+        Host host = hosts.computeIfAbsent(hostName,
+                name -> new Host(new TokenBucket(requestsPerSecond, burst), new Semaphore(connectionsPerHost)));
+        if (host.bucket().limitTo(requestsPerSecond, burst)) {
+            log.warn("Для сайтов хоста {} заданы разные requests-per-second и burst, для всех действуют наименьшие: {} и {}",
+                    hostName, host.bucket().permitsPerSecond(), host.bucket().burst());
+        }
+        SiteQueue queue = new SiteQueue(crawler, host, startUrl);
+        queues.add(queue);
+        queue.offer(startUrl);
+    }
+
+    /**
+     * Дожидается обхода всех сайтов.
+     *
+     * @return false, если обход был остановлен
+     */
+    public boolean await() throws InterruptedException {
+        try {
+            CompletableFuture.allOf(queues.stream().map(queue -> queue.done).toArray(CompletableFuture[]::new)).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            dispatcher.shutdownNow();
+            fetchers.shutdown();
+        }
+        return running;
+    }
+
+    /**
+     * Очереди URL всех сайтов и загрузки, выполняющиеся сейчас.
+     */
+    public StageStatistics statistics() {
+        int queued = queues.stream().mapToInt(queue -> queue.urls.size()).sum();
+        return new StageStatistics("fetch", queued, 0, maxConnections - connections.availablePermits());
+    }
+
+    /**
+     * Найденные, но ещё не загруженные URL сайта с указанной стартовой страницей.
+     */
+    public int queued(String startUrl) {
+        for (SiteQueue queue : queues) {
+            if (queue.startUrl.equals(startUrl)) {
+                return queue.urls.size();
+            }
+        }
+        return 0;
+    }
+
+    public void stop() {
+        running = false;
+        dispatcher.shutdownNow();
+        fetchers.shutdownNow();
+        queues.forEach(queue -> queue.done.complete(null));
+    }
+
+    private static String host(String url) {
+        String host = URI.create(url).getHost();
+        return host == null ? url : host.toLowerCase(Locale.ROOT);
+    }
+
+    private void execute(Executor executor, Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (running) {
+                throw e;
+            }
+        }
+    }
+
+    private void acquireConnection(Host host) throws InterruptedException {
+        host.connections().acquire();
+        try {
+            connections.acquire();
+        } catch (InterruptedException e) {
+            host.connections().release();
+            throw e;
+        }
+    }
+
+    private void releaseConnection(Host host) {
+        connections.release();
+        host.connections().release();
+    }
+
+    private final class SiteQueue {
+        private final WebCrawler crawler;
+        private final Host host;
+        private final String startUrl;
+        private final Set<String> seen = ConcurrentHashMap.newKeySet();
+        private final Queue<String> urls = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean dispatching = new AtomicBoolean();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private SiteQueue(WebCrawler crawler, Host host, String startUrl) {
+            this.crawler = crawler;
+            this.host = host;
+            this.startUrl = startUrl;
+        }
+
+        private void offer(String url) {
+            if (!running || !seen.add(url)) {
+                return;
+            }
+            pending.incrementAndGet();
+            urls.add(url);
+            if (dispatching.compareAndSet(false, true)) {
+                execute(dispatcher, this::dispatch);
+            }
+        }
+
+        /**
+         * Выполняется только в потоке диспетчера и только одним экземпляром на сайт.
+         */
+        private void dispatch() {
+            while (running) {
+                if (urls.isEmpty()) {
+                    dispatching.set(false);
+                    if (urls.isEmpty() || !dispatching.compareAndSet(false, true)) {
+                        return;
+                    }
+                }
+                long wait = host.bucket().tryAcquire();
+                if (wait > 0) {
+                    try {
+                        dispatcher.schedule(this::dispatch, wait, TimeUnit.NANOSECONDS);
+                    } catch (RejectedExecutionException e) {
+                        if (running) {
+                            throw e;
+                        }
+                    }
+                    return;
+                }
+                String url = urls.poll();
+                execute(fetchers, () -> fetch(url));
+            }
+        }
+
+        private void fetch(String url) {
+            boolean handedOver = false;
+            try {
+                if (running) {
+                    acquireConnection(host);
+                    try {
+                        crawler.crawl(url, this::completed);
+                        handedOver = true;
+                    } finally {
+                        releaseConnection(host);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.warn("Ошибка обхода страницы {}", url, e);
+            } finally {
+                if (!handedOver) {
+                    completed(Collections.emptyList());
+                }
+            }
+        }
+
+        /**
+         * Страница обработана: найденные ссылки ставятся в очередь сайта.
+         */
+        private void completed(List<String> links) {
+            links.forEach(this::offer);
+            if (pending.decrementAndGet() == 0) {
+                done.complete(null);
+            }
+        }
+    }
+}
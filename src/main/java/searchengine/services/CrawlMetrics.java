@@ -0,0 +1,149 @@
+package searchengine.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.dto.indexing.StageStatistics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Метрики обхода для Actuator.
+ */
+@Component
+@RequiredArgsConstructor
+public class CrawlMetrics {
+    private static final String[] STAGES = {"fetch", "extract", "lemmatize", "persist"};
+
+    private final MeterRegistry registry;
+    private final AtomicLong pagesWritten = new AtomicLong();
+    private volatile long indexingStartedAt;
+    private volatile long indexingFinishedAt;
+    private volatile long pagesAtStart;
+
+    /**
+     * Регистрирует датчики очередей стадий: fetch — размер фронтира, остальные — очереди конвейера и записи.
+     */
+    public void bindStages(Supplier<List<StageStatistics>> stages) {
+        for (String stage : STAGES) {
+            Gauge.builder("crawler.stage.queued", stages, current -> stageValue(current.get(), stage, false))
+                    .tag("stage", stage)
+                    .description("Задачи, ожидающие в очереди стадии")
+                    .register(registry);
+            Gauge.builder("crawler.stage.active", stages, current -> stageValue(current.get(), stage, true))
+                    .tag("stage", stage)
+                    .description("Задачи, выполняемые стадией")
+                    .register(registry);
+        }
+        Gauge.builder("crawler.pages.rate", this, CrawlMetrics::pagesPerSecond)
+                .description("Страниц в секунду за текущую или последнюю индексацию")
+                .baseUnit("pages/s")
+                .register(registry);
+    }
+
+    public void indexingStarted() {
+        pagesAtStart = pagesWritten.get();
+        indexingFinishedAt = 0;
+        indexingStartedAt = System.nanoTime();
+    }
+
+    public void indexingFinished() {
+        indexingFinishedAt = System.nanoTime();
+    }
+
+    public void recordFetch(String site, int status, long bytes, long nanos) {
+        fetchTimer(site).record(nanos, TimeUnit.NANOSECONDS);
+        responses(site, String.valueOf(status)).increment();
+        Counter.builder("crawler.fetch.bytes")
+                .tag("site", site)
+                .baseUnit("bytes")
+                .description("Объём загруженных тел страниц")
+                .register(registry)
+                .increment(bytes);
+    }
+
+    /**
+     * Загрузка, завершившаяся ошибкой ввода-вывода без HTTP-ответа.
+     */
+    public void recordFetchError(String site, long nanos) {
+        fetchTimer(site).record(nanos, TimeUnit.NANOSECONDS);
+        responses(site, "error").increment();
+    }
+
+    public void recordExtract(String site, long nanos) {
+        Timer.builder("crawler.extract")
+                .tag("site", site)
+                .description("Разбор страницы и извлечение текста и ссылок")
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordLemmatize(String site, long nanos) {
+        Timer.builder("crawler.lemmatize")
+                .tag("site", site)
+                .description("Лемматизация текста страницы")
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordBatch(int pages, long nanos) {
+        Timer.builder("writer.batch")
+                .description("Запись пачки страниц в одной транзакции")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("writer.batch.size")
+                .baseUnit("pages")
+                .description("Число страниц в записанной пачке")
+                .register(registry)
+                .record(pages);
+        Counter.builder("writer.pages")
+                .baseUnit("pages")
+                .description("Записанные страницы")
+                .register(registry)
+                .increment(pages);
+        pagesWritten.addAndGet(pages);
+    }
+
+    private Timer fetchTimer(String site) {
+        return Timer.builder("crawler.fetch")
+                .tag("site", site)
+                .description("Загрузка страницы вместе с телом")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Counter responses(String site, String status) {
+        return Counter.builder("crawler.responses")
+                .tag("site", site)
+                .tag("status", status)
+                .description("Ответы сайта по кодам HTTP")
+                .register(registry);
+    }
+
+    private double pagesPerSecond() {
+        long startedAt = indexingStartedAt;
+        if (startedAt == 0) {
+            return 0;
+        }
+        long finishedAt = indexingFinishedAt;
+        double seconds = ((finishedAt != 0 ? finishedAt : System.nanoTime()) - startedAt) / 1e9;
+        return seconds > 0 ? (pagesWritten.get() - pagesAtStart) / seconds : 0;
+    }
+
+    private static double stageValue(List<StageStatistics> stages, String stage, boolean active) {
+        for (StageStatistics statistics : stages) {
+            if (statistics.getName().equals(stage)) {
+                return active ? statistics.getActive() : statistics.getQueued();
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,65 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.CrawlerSettings;
+import searchengine.dto.indexing.StageStatistics;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Стадии обработки загруженной страницы: извлечение текста и ссылок, лемматизация.
+ */
+@Slf4j
+public class CrawlPipeline {
+    private final PipelineStage extract;
+    private final PipelineStage lemmatize;
+
+    public interface LinksTask {
+        List<String> run() throws InterruptedException;
+    }
+
+    public CrawlPipeline(CrawlerSettings settings) {
+        this.extract = new PipelineStage("extract", settings.getExtractThreads(), settings.getExtractQueueCapacity());
+        this.lemmatize = new PipelineStage("lemmatize", settings.getLemmatizeThreads(), settings.getLemmatizeQueueCapacity());
+    }
+
+    /**
+     * Ставит в очередь разбор страницы. onLinks вызывается ровно один раз - с найденными
+     * ссылками или с пустым списком, если разбор не удался.
+     */
+    public void extract(LinksTask task, Consumer<List<String>> onLinks) throws InterruptedException {
+        extract.submit(() -> {
+            List<String> links = Collections.emptyList();
+            try {
+                links = task.run();
+            } catch (RuntimeException e) {
+                log.error("Ошибка разбора страницы", e);
+            } finally {
+                onLinks.accept(links);
+            }
+        });
+    }
+
+    public void lemmatize(PipelineStage.Task task) throws InterruptedException {
+        lemmatize.submit(task);
+    }
+
+    /**
+     * Дожидается обработки всех страниц, уже переданных в конвейер.
+     */
+    public void awaitIdle() throws InterruptedException {
+        extract.awaitIdle();
+        lemmatize.awaitIdle();
+    }
+
+    public void shutdown() {
+        extract.shutdown();
+        lemmatize.shutdown();
+    }
+
+    public List<StageStatistics> statistics() {
+        return List.of(extract.statistics(), lemmatize.statistics());
+    }
+}
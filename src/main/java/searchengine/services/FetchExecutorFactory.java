@@ -0,0 +1,10 @@
+package searchengine.services;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Создаёт исполнитель загрузок {@link CrawlFrontier}, см. indexing-settings.crawler.fetch-mode.
+ */
+public interface FetchExecutorFactory {
+    ExecutorService create();
+}
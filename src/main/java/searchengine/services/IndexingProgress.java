@@ -0,0 +1,141 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.model.Site;
+import searchengine.model.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Ход текущей индексации по сайтам.
+ */
+@Component
+public class IndexingProgress {
+    private final Map<Integer, SiteProgress> sites = new ConcurrentHashMap<>();
+
+    /**
+     * Начинает учёт нового обхода; счётчики прошлого обхода отбрасываются.
+     */
+    public void reset() {
+        sites.clear();
+    }
+
+    /**
+     * @param storedPages страницы сайта, сохранённые до начала обхода
+     */
+    public SiteProgress start(Site site, int storedPages) {
+        SiteProgress progress = new SiteProgress(site, storedPages);
+        sites.put(site.getId(), progress);
+        return progress;
+    }
+
+    /**
+     * Запоминает итоговый статус и ошибку сайта, пока остальные сайты ещё обходятся.
+     */
+    public void finish(Site site) {
+        SiteProgress progress = sites.get(site.getId());
+        if (progress != null) {
+            progress.lastError = site.getLastError();
+            progress.status = site.getStatus();
+            progress.updatedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Сайты текущего обхода в порядке id.
+     */
+    public List<SiteProgress> sites() {
+        List<SiteProgress> progress = new ArrayList<>(sites.values());
+        progress.sort((a, b) -> Integer.compare(a.site.getId(), b.site.getId()));
+        return progress;
+    }
+
+    public static final class SiteProgress {
+        private final Site site;
+        private final int storedPages;
+        private final long startedAt = System.nanoTime();
+        private final LongAdder fetched = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder addedPages = new LongAdder();
+        private volatile IntSupplier queued = () -> 0;
+        private volatile long updatedAt = System.currentTimeMillis();
+        private volatile Status status = Status.INDEXING;
+        private volatile String lastError;
+
+        private SiteProgress(Site site, int storedPages) {
+            this.site = site;
+            this.storedPages = storedPages;
+        }
+
+        public Site site() {
+            return site;
+        }
+
+        public Status status() {
+            return status;
+        }
+
+        public String lastError() {
+            return lastError;
+        }
+
+        void bindQueue(IntSupplier queued) {
+            this.queued = queued;
+        }
+
+        void fetched() {
+            fetched.increment();
+            updatedAt = System.currentTimeMillis();
+        }
+
+        void failed() {
+            failed.increment();
+        }
+
+        void pageAdded() {
+            addedPages.increment();
+        }
+
+        public long fetchedPages() {
+            return fetched.sum();
+        }
+
+        public long failedPages() {
+            return failed.sum();
+        }
+
+        /**
+         * Страницы сайта в БД с учётом поставленных в очередь записи: сохранённые до обхода и новые.
+         */
+        public long pages() {
+            return storedPages + addedPages.sum();
+        }
+
+        public int queuedPages() {
+            return queued.getAsInt();
+        }
+
+        public long updatedAt() {
+            return updatedAt;
+        }
+
+        public double pagesPerSecond() {
+            double seconds = (System.nanoTime() - startedAt) / 1e9;
+            return seconds > 0 ? fetched.sum() / seconds : 0;
+        }
+
+        /**
+         * Оценка оставшегося времени в секундах по уже найденным, но не загруженным страницам;
+         * null, пока скорость неизвестна. Новые ссылки могут её увеличить.
+         */
+        public Long etaSeconds() {
+            double rate = pagesPerSecond();
+            return rate > 0 ? (long) Math.ceil(queuedPages() / rate) : null;
+        }
+    }
+}
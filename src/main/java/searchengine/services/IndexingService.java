@@ -1,11 +1,13 @@
 package searchengine.services;
 
 import searchengine.dto.ApiResponse;
+import searchengine.dto.indexing.PipelineResponse;
 
 public interface IndexingService {
-    ApiResponse startIndexing();
+    ApiResponse startIndexing(boolean incremental);
     ApiResponse stopIndexing();
     boolean isIndexing();
     boolean isIndexingComplete();
     ApiResponse indexPage(String url);
+    PipelineResponse getPipelineStatistics();
 }
\ No newline at end of file
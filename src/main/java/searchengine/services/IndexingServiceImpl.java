@@ -1,31 +1,34 @@
 package searchengine.services;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import lombok.RequiredArgsConstructor;
-import org.apache.tika.Tika;
+import lombok.extern.slf4j.Slf4j;
 import org.jsoup.Connection;
 import org.jsoup.Jsoup;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.stereotype.Service;
+import searchengine.config.CrawlerSettings;
 import searchengine.config.SitesList;
 import searchengine.dto.ApiResponse;
-import searchengine.model.Lemma;
+import searchengine.dto.indexing.PipelineResponse;
+import searchengine.dto.indexing.StageStatistics;
+import searchengine.index.InvertedIndex;
 import searchengine.model.Page;
-import searchengine.model.SearchIndex;
 import searchengine.model.Site;
 import searchengine.model.Status;
-import searchengine.repositories.IndexRepository;
 import searchengine.repositories.LemmaRepository;
 import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
 
-import java.io.ByteArrayInputStream;
+import javax.annotation.PostConstruct;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class IndexingServiceImpl implements IndexingService {
@@ -34,17 +37,43 @@ public class IndexingServiceImpl implements IndexingService {
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
+    private final PageContents pageContents;
     private final LemmasFinder lemmasFinder;
+    private final PageWriter pageWriter;
+    private final LemmaDictionary lemmaDictionary;
+    private final SiteGenerations siteGenerations;
+    private final CrawlerSettings crawlerSettings;
+    private final FetchExecutorFactory fetchExecutorFactory;
+    private final QueryPlanner queryPlanner;
+    private final InvertedIndex invertedIndex;
+    private final CrawlMetrics crawlMetrics;
+    private final IndexingProgress indexingProgress;
 
-    private ForkJoinPool forkJoinPool;
+    private volatile CrawlFrontier frontier;
+    private volatile CrawlPipeline pipeline;
     private final AtomicBoolean isIndexing = new AtomicBoolean(false);
-    private static final Tika TIKA_INSTANCE = new Tika();
+    private volatile boolean fullReindex;
 
+    @PostConstruct
+    public void bindMetrics() {
+        crawlMetrics.bindStages(this::stageStatistics);
+    }
+
+    /**
+     * Один раз подсчитывает страницы и леммы сайтов, у которых сохранённых чисел ещё нет.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void refreshMissingCounts() {
+        for (Site site : siteRepository.findAll()) {
+            if (site.getPageCount() == null || site.getLemmaCount() == null) {
+                refreshCounts(site);
+                siteRepository.save(site);
+            }
+        }
+    }
 
     @Override
-    @Transactional
-    public ApiResponse startIndexing() {
+    public ApiResponse startIndexing(boolean incremental) {
         if (isIndexing.get()) {
             ApiResponse response = new ApiResponse();
             response.setResult(false);
@@ -52,16 +81,21 @@ public class IndexingServiceImpl implements IndexingService {
             return response;
         }
         isIndexing.set(true);
+        fullReindex = !incremental;
+        invertedIndex.beginChanges();
+        crawlMetrics.indexingStarted();
 
-        indexRepository.deleteAllInBatch();
-        lemmaRepository.deleteAllInBatch();
-        pageRepository.deleteAllInBatch();
-        siteRepository.deleteAllInBatch();
+        // Полная переиндексация строит новое поколение сайтов, поиск до переключения идёт по текущему.
+        if (!incremental) {
+            siteGenerations.dropInactive();
+        }
 
         List<Site> configuredSites = sitesList.getSites().stream()
                 .map(siteConfig -> {
-                    Optional<Site> optionalSite = siteRepository.findByUrl(siteConfig.getUrl());
-                    Site site = optionalSite.orElse(new Site());
+                    Site site = incremental
+                            ? siteRepository.findByUrlAndActiveTrue(siteConfig.getUrl()).orElseGet(Site::new)
+                            : new Site();
+                    site.setActive(incremental);
                     site.setUrl(siteConfig.getUrl());
                     site.setName(siteConfig.getName());
                     site.setStatus(Status.INDEXING);
@@ -71,22 +105,57 @@ public class IndexingServiceImpl implements IndexingService {
                 })
                 .collect(Collectors.toList());
 
-        forkJoinPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        Map<Integer, KnownPages> knownPagesBySite = new HashMap<>();
         for (Site site : configuredSites) {
-            WebCrawler task = new WebCrawler(site.getUrl(), site, siteRepository, pageRepository, lemmaRepository, indexRepository, isIndexing, lemmasFinder);
-            forkJoinPool.execute(task);
+            knownPagesBySite.put(site.getId(), incremental ? KnownPages.load(site, pageRepository, pageContents) : KnownPages.none());
+        }
+
+        indexingProgress.reset();
+        pageWriter.resetFailures();
+        CrawlPipeline crawlPipeline = new CrawlPipeline(crawlerSettings);
+        CrawlFrontier crawlFrontier = new CrawlFrontier(fetchExecutorFactory.create(),
+                crawlerSettings.getMaxConnections(), crawlerSettings.getMaxConnectionsPerHost());
+        pipeline = crawlPipeline;
+        frontier = crawlFrontier;
+        for (int i = 0; i < configuredSites.size(); i++) {
+            Site site = configuredSites.get(i);
+            searchengine.config.Site siteConfig = sitesList.getSites().get(i);
+            IndexingProgress.SiteProgress progress = indexingProgress.start(site, incremental && site.getPageCount() != null ? site.getPageCount() : 0);
+            progress.bindQueue(() -> crawlFrontier.queued(site.getUrl()));
+            WebCrawler crawler = new WebCrawler(site, lemmasFinder, pageWriter, knownPagesBySite.get(site.getId()), crawlPipeline,
+                    crawlerSettings.getMaxBinaryTextChars(), crawlMetrics, progress);
+            crawlFrontier.addSite(crawler, site.getUrl(), siteConfig.getRequestsPerSecond(), siteConfig.getBurst());
         }
 
         new Thread(() -> {
+            boolean completed = false;
             try {
-                forkJoinPool.shutdown();
-                if (forkJoinPool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS)) {
+                if (crawlFrontier.await()) {
+                    crawlPipeline.awaitIdle();
+                    pageWriter.awaitIdle();
+                    if (incremental && isIndexing.get()) {
+                        removeStalePages(knownPagesBySite);
+                    }
+                    lemmaDictionary.flush();
                     updateSiteStatusOnCompletion(configuredSites);
+                    if (!incremental && isIndexing.get()) {
+                        siteGenerations.swap(configuredSites);
+                    }
+                    queryPlanner.refresh();
+                    CacheStats lemmaCacheStats = lemmasFinder.cacheStats();
+                    log.info("Индексация завершена. Кэш словоформ: {} записей, попаданий {}%, вытеснено {}",
+                            lemmasFinder.cacheSize(), String.format("%.1f", lemmasFinder.hitRate() * 100),
+                            lemmaCacheStats.evictionCount());
+                    completed = isIndexing.get();
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 updateSiteStatusOnFailure(configuredSites, "Индексация прервана");
             } finally {
+                crawlPipeline.shutdown();
+                // Сегмент индекса записывается только после полностью завершённого обхода.
+                invertedIndex.endChanges(completed);
+                crawlMetrics.indexingFinished();
                 isIndexing.set(false);
             }
         }).start();
@@ -104,24 +173,48 @@ public class IndexingServiceImpl implements IndexingService {
         }
 
         isIndexing.set(false);
-        if (forkJoinPool != null && !forkJoinPool.isShutdown()) {
-            forkJoinPool.shutdownNow();
+        if (frontier != null) {
+            frontier.stop();
+        }
+        if (pipeline != null) {
+            pipeline.shutdown();
         }
+        pageWriter.discardPending();
 
         List<Site> sitesToIndex = siteRepository.findByStatus(Status.INDEXING);
         updateSiteStatusOnFailure(sitesToIndex, "Индексация остановлена пользователем");
+        siteGenerations.activateIfNoneActive();
+        queryPlanner.refresh();
         return ApiResponse.ok();
     }
 
+    /**
+     * Удаляет страницы, которые были в индексе, но не встретились при повторном обходе,
+     * и леммы, оставшиеся без страниц.
+     */
+    private void removeStalePages(Map<Integer, KnownPages> knownPagesBySite) {
+        knownPagesBySite.forEach((siteId, knownPages) -> {
+            List<Integer> stalePageIds = knownPages.unvisitedPageIds();
+            if (!stalePageIds.isEmpty()) {
+                pageWriter.delete(siteId, stalePageIds);
+            }
+            lemmaDictionary.purgeUnused(siteId);
+        });
+    }
+
     private void updateSiteStatusOnCompletion(List<Site> sites) {
         for (Site site : sites) {
             Optional<Site> actualSiteOpt = siteRepository.findById(site.getId());
             if (actualSiteOpt.isPresent()) {
                 Site actualSite = actualSiteOpt.get();
                 if (actualSite.getStatus() == Status.INDEXING) {
-                    actualSite.setStatus(Status.INDEXED);
+                    String writeError = pageWriter.failure(actualSite.getId());
+                    actualSite.setStatus(writeError == null ? Status.INDEXED : Status.FAILED);
+                    actualSite.setLastError(writeError);
                     actualSite.setStatusTime(LocalDateTime.now());
+                    refreshCounts(actualSite);
                     siteRepository.save(actualSite);
+                    indexingProgress.finish(actualSite);
                 }
             }
         }
@@ -133,11 +226,42 @@ public class IndexingServiceImpl implements IndexingService {
                 site.setStatus(Status.FAILED);
                 site.setStatusTime(LocalDateTime.now());
                 site.setLastError(error);
+                refreshCounts(site);
                 siteRepository.save(site);
+                indexingProgress.finish(site);
             }
         }
     }
 
+    /**
+     * Пересчитывает сохранённые числа страниц и лемм сайта; вызывается только по окончании обхода
+     * или после изменения отдельной страницы, статистика во время обхода берётся из {@link IndexingProgress}.
+     */
+    private void refreshCounts(Site site) {
+        site.setPageCount(pageRepository.countBySiteId(site.getId()));
+        site.setLemmaCount((int) lemmaRepository.countBySite_Id(site.getId()));
+    }
+
+    @Override
+    public PipelineResponse getPipelineStatistics() {
+        PipelineResponse response = new PipelineResponse();
+        response.setResult(true);
+        response.setStages(stageStatistics());
+        return response;
+    }
+
+    private List<StageStatistics> stageStatistics() {
+        List<StageStatistics> stages = new ArrayList<>();
+        CrawlFrontier currentFrontier = frontier;
+        CrawlPipeline currentPipeline = pipeline;
+        if (isIndexing.get() && currentFrontier != null && currentPipeline != null) {
+            stages.add(currentFrontier.statistics());
+            stages.addAll(currentPipeline.statistics());
+        }
+        stages.add(pageWriter.statistics());
+        return stages;
+    }
+
     @Override
     public boolean isIndexing() {
         return isIndexing.get();
@@ -145,7 +269,7 @@ public class IndexingServiceImpl implements IndexingService {
 
     @Override
     public boolean isIndexingComplete() {
-        long sitesNotIndexed = siteRepository.countByStatusNot(Status.INDEXED);
+        long sitesNotIndexed = siteRepository.countByActiveTrueAndStatusNot(Status.INDEXED);
         return sitesNotIndexed == 0;
     }
 
@@ -164,7 +288,15 @@ public class IndexingServiceImpl implements IndexingService {
             return response;
         }
 
-        Site siteEntity = siteRepository.findByUrl(siteConfig.getUrl()).orElseGet(() -> {
+        if (isIndexing.get() && fullReindex) {
+            // Страница попала бы в активное поколение, которое удаляется при переключении на новое.
+            ApiResponse response = new ApiResponse();
+            response.setResult(false);
+            response.setError("Во время полной переиндексации отдельные страницы не индексируются");
+            return response;
+        }
+
+        Site siteEntity = siteRepository.findByUrlAndActiveTrue(siteConfig.getUrl()).orElseGet(() -> {
             Site newSite = new Site();
             newSite.setUrl(siteConfig.getUrl());
             newSite.setName(siteConfig.getName());
@@ -179,23 +311,9 @@ public class IndexingServiceImpl implements IndexingService {
         }
         final String finalPath = path;
 
-        pageRepository.findByPathAndSite(finalPath, siteEntity).ifPresent(page -> {
-            List<SearchIndex> indices = indexRepository.findAllByPage(page);
-            if (!indices.isEmpty()) {
-                Set<Lemma> lemmasOnPage = indices.stream().map(SearchIndex::getLemma).collect(Collectors.toSet());
-                lemmasOnPage.forEach(lemma -> lemma.setFrequency(lemma.getFrequency() - 1));
-
-                List<Lemma> lemmasToUpdate = lemmasOnPage.stream().filter(l -> l.getFrequency() > 0).collect(Collectors.toList());
-                List<Lemma> lemmasToDelete = lemmasOnPage.stream().filter(l -> l.getFrequency() <= 0).collect(Collectors.toList());
-
-                indexRepository.deleteAllInBatch(indices);
-                if (!lemmasToUpdate.isEmpty()) lemmaRepository.saveAll(lemmasToUpdate);
-                if (!lemmasToDelete.isEmpty()) lemmaRepository.deleteAllInBatch(lemmasToDelete);
-            }
-            pageRepository.delete(page);
-        });
-        pageRepository.flush();
+        Optional<Page> existingPage = pageRepository.findByPathAndSite(finalPath, siteEntity);
 
+        invertedIndex.beginChanges();
         try {
             Connection.Response response = Jsoup.connect(url)
                     .userAgent("HeliontSearchBot-SinglePage")
@@ -204,42 +322,28 @@ public class IndexingServiceImpl implements IndexingService {
                     .execute();
 
             int statusCode = response.statusCode();
-            String textContent = TIKA_INSTANCE.parseToString(new ByteArrayInputStream(response.bodyAsBytes()));
-            String pageContentToSave = response.contentType() != null && Objects.requireNonNull(response.contentType()).toLowerCase().contains("text/html")
-                    ? response.parse().html()
-                    : textContent;
-
-            Page newPage = new Page();
-            newPage.setSite(siteEntity);
-            newPage.setPath(finalPath);
-            newPage.setCode(statusCode);
-            newPage.setContent(pageContentToSave);
-            pageRepository.saveAndFlush(newPage);
-
-            if (statusCode == 200 && !textContent.isBlank()) {
-                Map<String, Integer> pageLemmasMap = lemmasFinder.findLemmas(textContent);
-                if (!pageLemmasMap.isEmpty()) {
-                    Collection<String> lemmaNames = pageLemmasMap.keySet();
-                    List<Lemma> existingLemmas = lemmaRepository.findAllBySiteAndLemmaIn(siteEntity, lemmaNames);
-                    Map<String, Lemma> dbLemmasMap = existingLemmas.stream().collect(Collectors.toMap(Lemma::getLemma, Function.identity()));
-                    List<Lemma> lemmasToSave = new ArrayList<>();
-                    for (String lemmaName : pageLemmasMap.keySet()) {
-                        Lemma lemma = dbLemmasMap.computeIfAbsent(lemmaName, l -> new Lemma(l, siteEntity));
-                        lemma.setFrequency(lemma.getFrequency() + 1);
-                        lemmasToSave.add(lemma);
-                    }
-                    lemmaRepository.saveAll(lemmasToSave);
-                    List<SearchIndex> indicesToSave = new ArrayList<>();
-                    for (Map.Entry<String, Integer> entry : pageLemmasMap.entrySet()) {
-                        indicesToSave.add(new SearchIndex(newPage, dbLemmasMap.get(entry.getKey()), entry.getValue().floatValue()));
-                    }
-                    indexRepository.saveAll(indicesToSave);
-                }
+            PageTextExtractor.Extracted extracted = PageTextExtractor.extract(response, crawlerSettings.getMaxBinaryTextChars());
+
+            ParsedPage parsedPage = ParsedPage.withStatus(siteEntity, finalPath, statusCode, extracted.content());
+            if (statusCode == 200) {
+                parsedPage = ParsedPage.indexed(siteEntity, finalPath, extracted.content(), extracted.title(), extracted.text(),
+                        PageTokens.of(lemmasFinder, extracted.text()), PageVersion.of(response));
+            }
+            if (existingPage.isPresent()) {
+                // Строки index существующей страницы обновляются по разнице старого и нового набора лемм.
+                parsedPage = parsedPage.replacing(existingPage.get().getId());
             }
+            pageWriter.write(List.of(parsedPage));
             siteEntity.setStatusTime(LocalDateTime.now());
+            refreshCounts(siteEntity);
             siteRepository.save(siteEntity);
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            // Сегмент, признанный устаревшим в beginChanges, переписывается с задержкой, чтобы серия
+            // запросов на отдельные страницы не переписывала его каждый раз.
+            invertedIndex.endChanges(false);
+            invertedIndex.scheduleCompaction();
         }
         return ApiResponse.ok();
     }
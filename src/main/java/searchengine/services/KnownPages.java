@@ -0,0 +1,63 @@
+package searchengine.services;
+
+import searchengine.model.Site;
+import searchengine.repositories.PageRepository;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Страницы сайта, сохранённые прошлой индексацией.
+ */
+public class KnownPages {
+    private static final KnownPages NONE = new KnownPages(Collections.emptyMap(), null);
+
+    private final Map<String, PageRepository.KnownPage> pages;
+    private final PageContents pageContents;
+    private final Set<String> visitedPaths = ConcurrentHashMap.newKeySet();
+
+    private KnownPages(Map<String, PageRepository.KnownPage> pages, PageContents pageContents) {
+        this.pages = pages;
+        this.pageContents = pageContents;
+    }
+
+    public static KnownPages none() {
+        return NONE;
+    }
+
+    public static KnownPages load(Site site, PageRepository pageRepository, PageContents pageContents) {
+        Map<String, PageRepository.KnownPage> pages = pageRepository.findKnownPagesBySite(site).stream()
+                .collect(Collectors.toMap(PageRepository.KnownPage::getPath, Function.identity(), (first, second) -> first));
+        return new KnownPages(pages, pageContents);
+    }
+
+    /**
+     * Отмечает путь как встреченный и возвращает прошлую версию страницы, если она есть.
+     */
+    public PageRepository.KnownPage visit(String path) {
+        PageRepository.KnownPage page = pages.get(path);
+        if (page != null) {
+            visitedPaths.add(path);
+        }
+        return page;
+    }
+
+    /**
+     * Загружает сохранённое тело страницы только тогда, когда оно действительно нужно.
+     */
+    public String loadContent(PageRepository.KnownPage page) {
+        return pageContents.find(page.getId());
+    }
+
+    public List<Integer> unvisitedPageIds() {
+        return pages.values().stream()
+                .filter(page -> !visitedPaths.contains(page.getPath()))
+                .map(PageRepository.KnownPage::getId)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,98 @@
+package searchengine.services;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Счётчик вхождений лемм на открытой адресации.
+ */
+public class LemmaCounter implements LemmasFinder.TokenConsumer {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int size;
+
+    @Override
+    public void accept(int start, int end, String lemma) {
+        increment(lemma);
+    }
+
+    public void increment(String lemma) {
+        add(lemma, 1);
+    }
+
+    public void add(String lemma, int delta) {
+        int slot = slot(keys, lemma);
+        if (keys[slot] == null) {
+            keys[slot] = lemma;
+            if (++size * 4 > keys.length * 3) {
+                grow();
+                slot = slot(keys, lemma);
+            }
+        }
+        counts[slot] += delta;
+    }
+
+    public void addAll(LemmaCounter other) {
+        other.forEach(this::add);
+    }
+
+    public int get(String lemma) {
+        int slot = slot(keys, lemma);
+        return keys[slot] == null ? 0 : counts[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(ObjIntConsumer<String> consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                consumer.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    public Map<String, Integer> toMap() {
+        Map<String, Integer> map = new HashMap<>(size * 2);
+        forEach(map::put);
+        return map;
+    }
+
+    private static int slot(String[] keys, String lemma) {
+        int mask = keys.length - 1;
+        int slot = mix(lemma.hashCode()) & mask;
+        while (true) {
+            String key = keys[slot];
+            if (key == null || key == lemma || key.equals(lemma)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void grow() {
+        String[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new String[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
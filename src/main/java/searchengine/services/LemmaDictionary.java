@@ -0,0 +1,206 @@
+package searchengine.services;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import searchengine.config.PageWriterSettings;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Словари лемм сайтов в памяти: id новых лемм и накопленные частоты до сброса в БД.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LemmaDictionary {
+    private static final String UPSERT_SQL = "INSERT INTO lemma (id, site_id, lemma, frequency) VALUES (?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE frequency = frequency + VALUES(frequency)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PageWriterSettings settings;
+
+    private final Map<Integer, Map<String, Entry>> sites = new ConcurrentHashMap<>();
+    private final Queue<Entry> dirty = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger lastId = new AtomicInteger(-1);
+    private ScheduledExecutorService flusher;
+
+    @Getter
+    public static final class Entry {
+        private final int id;
+        private final int siteId;
+        private final String lemma;
+        private final LongAdder pendingFrequency = new LongAdder();
+        private final AtomicBoolean queued = new AtomicBoolean();
+        private volatile boolean persisted;
+
+        private Entry(int id, int siteId, String lemma, boolean persisted) {
+            this.id = id;
+            this.siteId = siteId;
+            this.lemma = lemma;
+            this.persisted = persisted;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lemma-frequency-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = settings.getLemmaFlushIntervalMs();
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("Не удалось сохранить частоты лемм", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        flush();
+    }
+
+    /**
+     * Возвращает лемму сайта, при необходимости выдавая ей новый id.
+     * Строка в БД для новой леммы создаётся через {@link #persistNew}.
+     */
+    public Entry resolve(int siteId, String lemma) {
+        return siteLemmas(siteId).computeIfAbsent(lemma, l -> new Entry(nextId(), siteId, l, false));
+    }
+
+    /**
+     * Возвращает известную лемму сайта или null, не выдавая новых id.
+     */
+    public Entry find(int siteId, String lemma) {
+        return siteLemmas(siteId).get(lemma);
+    }
+
+    /**
+     * Число лемм сайта в словаре или null, если словарь сайта ещё не загружен.
+     */
+    public Integer size(int siteId) {
+        Map<String, Entry> lemmas = sites.get(siteId);
+        return lemmas == null ? null : lemmas.size();
+    }
+
+    /**
+     * Учитывает ещё одну страницу с леммой; в БД значение попадёт при ближайшем {@link #flush}.
+     */
+    public void addFrequency(Entry entry, int delta) {
+        entry.pendingFrequency.add(delta);
+        if (entry.queued.compareAndSet(false, true)) {
+            dirty.add(entry);
+        }
+    }
+
+    /**
+     * Вставляет строки для ещё не сохранённых лемм в текущей транзакции. Вставка идемпотентна,
+     * поэтому одну лемму могут одновременно сохранять несколько потоков записи.
+     * После фиксации транзакции нужно вызвать {@link #markPersisted}.
+     */
+    public List<Entry> persistNew(Collection<Entry> entries) {
+        List<Entry> created = entries.stream()
+                .filter(entry -> !entry.persisted)
+                .distinct()
+                .sorted(Comparator.comparingInt(Entry::getId))
+                .collect(Collectors.toList());
+        if (!created.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO lemma (id, site_id, lemma, frequency) VALUES (?, ?, ?, 0) " +
+                    "ON DUPLICATE KEY UPDATE id = id", created.stream()
+                    .map(entry -> new Object[]{entry.id, entry.siteId, entry.lemma})
+                    .collect(Collectors.toList()));
+        }
+        return created;
+    }
+
+    public void markPersisted(Collection<Entry> entries) {
+        entries.forEach(entry -> entry.persisted = true);
+    }
+
+    /**
+     * Сбрасывает накопленные приращения частот в БД одной пачкой.
+     */
+    public synchronized void flush() {
+        List<Entry> entries = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        Entry entry;
+        while ((entry = dirty.poll()) != null) {
+            entry.queued.set(false);
+            long delta = entry.pendingFrequency.sumThenReset();
+            if (delta != 0) {
+                entries.add(entry);
+                rows.add(new Object[]{entry.id, entry.siteId, entry.lemma, delta});
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        rows.sort(Comparator.comparingInt(row -> (Integer) row[0]));
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+        } catch (RuntimeException e) {
+            for (int i = 0; i < entries.size(); i++) {
+                addFrequency(entries.get(i), ((Long) rows.get(i)[3]).intValue());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Забывает словарь сайта и его несохранённые частоты перед удалением сайта из БД.
+     */
+    public synchronized void forgetSite(int siteId) {
+        dirty.removeIf(entry -> entry.siteId == siteId);
+        sites.remove(siteId);
+    }
+
+    /**
+     * Удаляет леммы сайта, которые больше не встречаются ни на одной странице.
+     * Вызывать, когда запись страниц сайта не идёт: словарь сайта перечитывается из БД заново.
+     *
+     * @return число удалённых лемм
+     */
+    public synchronized int purgeUnused(int siteId) {
+        flush();
+        int deleted = jdbcTemplate.update("DELETE FROM lemma WHERE site_id = ? AND frequency <= 0", siteId);
+        sites.remove(siteId);
+        return deleted;
+    }
+
+    private Map<String, Entry> siteLemmas(int siteId) {
+        return sites.computeIfAbsent(siteId, id -> {
+            Map<String, Entry> lemmas = new ConcurrentHashMap<>();
+            jdbcTemplate.query("SELECT id, lemma FROM lemma WHERE site_id = ?",
+                    (RowCallbackHandler) resultSet -> lemmas.put(resultSet.getString(2),
+                            new Entry(resultSet.getInt(1), id, resultSet.getString(2), true)), id);
+            return lemmas;
+        });
+    }
+
+    private int nextId() {
+        if (lastId.get() < 0) {
+            synchronized (lastId) {
+                if (lastId.get() < 0) {
+                    Integer maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM lemma", Integer.class);
+                    lastId.set(maxId == null ? 0 : maxId);
+                }
+            }
+        }
+        return lastId.incrementAndGet();
+    }
+}
@@ -1,57 +1,319 @@
 package searchengine.services;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.apache.lucene.morphology.LuceneMorphology;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
-public record LemmasFinder(LuceneMorphology russianMorphology, LuceneMorphology englishMorphology) {
-    private static final Pattern WORD_PATTERN = Pattern.compile("[a-zA-Zа-яА-Я]+");
+/**
+ * Лемматизатор русского и английского текста с общим кэшем словоформ.
+ */
+public class LemmasFinder implements MeterBinder {
+    private static final int NOT_A_LETTER = 0;
+    private static final int LATIN = 1;
+    private static final int CYRILLIC = 2;
+    private static final int MIXED = 3;
+    private static final Pattern SERVICE_WORD_PATTERN = Pattern.compile("(?:PREP|CONJ|PART|INT|PN|ARTICLE)$");
+    /**
+     * Отметка в кэше для словоформ без леммы: служебных слов и слов, неизвестных морфологии.
+     */
+    private static final String NO_LEMMA = "";
+
+    private final LuceneMorphology russianMorphology;
+    private final LuceneMorphology englishMorphology;
+    private final Cache<String, String> lemmaCache;
+    private final ThreadLocal<WordTable> wordTables = ThreadLocal.withInitial(WordTable::new);
+    private final LongAdder wordTableHits = new LongAdder();
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+    private final int chunkSize;
+
+    /**
+     * Получает слово текста: его границы [start, end) и лемму.
+     */
+    @FunctionalInterface
+    public interface TokenConsumer {
+        void accept(int start, int end, String lemma);
+    }
+
+    /**
+     * @param pool              пул для параллельной лемматизации больших текстов
+     * @param parallelThreshold длина текста в символах, начиная с которой он делится на куски
+     * @param chunkSize         наибольшая длина куска
+     */
+    public LemmasFinder(LuceneMorphology russianMorphology, LuceneMorphology englishMorphology, long cacheSize,
+                        ForkJoinPool pool, int parallelThreshold, int chunkSize) {
+        this.russianMorphology = russianMorphology;
+        this.englishMorphology = englishMorphology;
+        this.lemmaCache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .recordStats()
+                .build();
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
 
     public Map<String, Integer> findLemmas(String text) {
-        Map<String, Integer> lemmas = new HashMap<>();
-        Matcher matcher = WORD_PATTERN.matcher(text.toLowerCase());
+        return countLemmas(text).toMap();
+    }
 
-        while (matcher.find()) {
-            String word = matcher.group();
+    public LemmaCounter countLemmas(String text) {
+        return collectTokens(text, LemmaCounter::new, LemmaCounter::addAll);
+    }
 
-            LuceneMorphology currentMorphology = null;
-            if (isRussian(word)) {
-                currentMorphology = russianMorphology;
-            } else if (isEnglish(word)) {
-                currentMorphology = englishMorphology;
-            }
+    /**
+     * Собирает слова текста в накопители: короткий текст целиком в один накопитель в текущем потоке,
+     * длинный — по накопителю на кусок в пуле лемматизации. Накопители кусков сливаются слева направо,
+     * {@code merger} дописывает второй в первый, так что порядок слов сохраняется.
+     */
+    public <T extends TokenConsumer> T collectTokens(String text, Supplier<T> accumulator, BiConsumer<T, T> merger) {
+        if (text.length() < parallelThreshold) {
+            T result = accumulator.get();
+            findTokens(text, 0, text.length(), result);
+            return result;
+        }
+        return pool.invoke(new ChunkTask<>(text, 0, text.length(), accumulator, merger));
+    }
+
+    public void findTokens(String text, TokenConsumer consumer) {
+        findTokens(text, 0, text.length(), consumer);
+    }
 
-            if (currentMorphology == null) {
+    /**
+     * Словом считается непрерывная последовательность латинских или русских букв (без ё);
+     * слова, в которых смешаны алфавиты, пропускаются. Разбирается часть текста [from, to),
+     * границы слов передаются относительно всего текста.
+     */
+    public void findTokens(String text, int from, int to, TokenConsumer consumer) {
+        WordTable words = wordTables.get();
+        int position = from;
+        while (position < to) {
+            int script = script(text.charAt(position));
+            if (script == NOT_A_LETTER) {
+                position++;
                 continue;
             }
-
-            List<String> wordBaseForms = currentMorphology.getMorphInfo(word);
-            if (!wordBaseForms.isEmpty() && isServiceWord(wordBaseForms.get(0))) {
+            int start = position;
+            char[] buffer = words.buffer;
+            int wordLength = 0;
+            int hash = 0;
+            while (position < to) {
+                char c = text.charAt(position);
+                int charScript = script(c);
+                if (charScript == NOT_A_LETTER) {
+                    break;
+                }
+                if (charScript != script) {
+                    script = MIXED;
+                }
+                if (wordLength == buffer.length) {
+                    buffer = words.growBuffer();
+                }
+                char lower = toLowerCase(c);
+                buffer[wordLength++] = lower;
+                hash = 31 * hash + lower;
+                position++;
+            }
+            if (script == MIXED) {
                 continue;
             }
-
-            List<String> normalForms = currentMorphology.getNormalForms(word);
-            if (!normalForms.isEmpty()) {
-                String lemma = normalForms.get(0);
-                lemmas.put(lemma, lemmas.getOrDefault(lemma, 0) + 1);
+            String lemma = words.find(buffer, wordLength, hash);
+            if (lemma != null) {
+                wordTableHits.increment();
+            } else {
+                String word = new String(buffer, 0, wordLength);
+                lemma = lemmaCache.get(word, this::lemmatize);
+                words.put(word, hash, lemma);
+            }
+            if (!lemma.isEmpty()) {
+                consumer.accept(start, position, lemma);
             }
         }
-        return lemmas;
     }
 
-    private boolean isRussian(String word) {
-        return word.chars().allMatch(c -> c >= 'а' && c <= 'я');
+    /**
+     * Статистика общего кэша словоформ. Попадания в таблицы потоков в неё не входят, см. {@link #hitRate()}.
+     */
+    public CacheStats cacheStats() {
+        return lemmaCache.stats();
+    }
+
+    /**
+     * Доля словоформ, для которых не понадобился морфологический анализ.
+     */
+    public double hitRate() {
+        CacheStats stats = lemmaCache.stats();
+        long localHits = wordTableHits.sum();
+        long requests = localHits + stats.requestCount();
+        return requests == 0 ? 1.0 : (double) (localHits + stats.hitCount()) / requests;
+    }
+
+    public long cacheSize() {
+        return lemmaCache.estimatedSize();
     }
 
-    private boolean isEnglish(String word) {
-        return word.chars().allMatch(c -> c >= 'a' && c <= 'z');
+    /**
+     * Метрики кэша словоформ (cache.* с тегом cache=lemmas) и попаданий в таблицы потоков.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, lemmaCache, "lemmas");
+        FunctionCounter.builder("lemmas.word.table.hits", wordTableHits, LongAdder::sum)
+                .description("Словоформы, найденные в таблице потока без обращения к общему кэшу")
+                .register(registry);
+        Gauge.builder("lemmas.hit.rate", this, LemmasFinder::hitRate)
+                .description("Доля словоформ, для которых не понадобился морфологический анализ")
+                .register(registry);
+    }
+
+    private String lemmatize(String word) {
+        LuceneMorphology currentMorphology = script(word.charAt(0)) == CYRILLIC ? russianMorphology : englishMorphology;
+
+        List<String> wordBaseForms = currentMorphology.getMorphInfo(word);
+        if (!wordBaseForms.isEmpty() && isServiceWord(wordBaseForms.get(0))) {
+            return NO_LEMMA;
+        }
+
+        List<String> normalForms = currentMorphology.getNormalForms(word);
+        return normalForms.isEmpty() ? NO_LEMMA : normalForms.get(0);
     }
 
     private boolean isServiceWord(String wordInfo) {
-        return wordInfo.matches(".*(PREP|CONJ|PART|INT|PN|ARTICLE)$");
+        return SERVICE_WORD_PATTERN.matcher(wordInfo).find();
+    }
+
+    /**
+     * Первая позиция не раньше {@code position}, на которой не продолжается слово.
+     */
+    private static int wordBoundary(String text, int position, int to) {
+        while (position < to && script(text.charAt(position)) != NOT_A_LETTER) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int script(char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+            return LATIN;
+        }
+        if (c >= 'А' && c <= 'я') {
+            return CYRILLIC;
+        }
+        return NOT_A_LETTER;
+    }
+
+    private static char toLowerCase(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'А' && c <= 'Я') ? (char) (c + 32) : c;
+    }
+
+    /**
+     * Делит часть текста пополам по границе слова, пока куски не станут меньше {@link #chunkSize}.
+     */
+    private final class ChunkTask<T extends TokenConsumer> extends RecursiveTask<T> {
+        private final String text;
+        private final int from;
+        private final int to;
+        private final Supplier<T> accumulator;
+        private final BiConsumer<T, T> merger;
+
+        private ChunkTask(String text, int from, int to, Supplier<T> accumulator, BiConsumer<T, T> merger) {
+            this.text = text;
+            this.from = from;
+            this.to = to;
+            this.accumulator = accumulator;
+            this.merger = merger;
+        }
+
+        @Override
+        protected T compute() {
+            int middle = to - from > chunkSize ? wordBoundary(text, from + (to - from) / 2, to) : to;
+            if (middle >= to) {
+                T result = accumulator.get();
+                findTokens(text, from, to, result);
+                return result;
+            }
+            ChunkTask<T> right = new ChunkTask<>(text, middle, to, accumulator, merger);
+            right.fork();
+            T result = new ChunkTask<>(text, from, middle, accumulator, merger).compute();
+            merger.accept(result, right.join());
+            return result;
+        }
+    }
+
+    /**
+     * Словоформы, уже встреченные потоком, и их леммы. Таблица ограничена по размеру
+     * и очищается целиком при заполнении; общий кэш при этом не теряется.
+     */
+    private static final class WordTable {
+        private static final int CAPACITY = 8192;
+        private static final int MAX_SIZE = CAPACITY * 3 / 4;
+
+        private final String[] words = new String[CAPACITY];
+        private final int[] hashes = new int[CAPACITY];
+        private final String[] lemmas = new String[CAPACITY];
+        private int size;
+        private char[] buffer = new char[64];
+
+        private char[] growBuffer() {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            return buffer;
+        }
+
+        private String find(char[] word, int length, int hash) {
+            for (int slot = slot(hash); words[slot] != null; slot = (slot + 1) & (CAPACITY - 1)) {
+                if (hashes[slot] == hash && matches(words[slot], word, length)) {
+                    return lemmas[slot];
+                }
+            }
+            return null;
+        }
+
+        private void put(String word, int hash, String lemma) {
+            if (size >= MAX_SIZE) {
+                Arrays.fill(words, null);
+                Arrays.fill(lemmas, null);
+                size = 0;
+            }
+            int slot = slot(hash);
+            while (words[slot] != null) {
+                slot = (slot + 1) & (CAPACITY - 1);
+            }
+            words[slot] = word;
+            hashes[slot] = hash;
+            lemmas[slot] = lemma;
+            size++;
+        }
+
+        private static int slot(int hash) {
+            return (hash ^ (hash >>> 16)) & (CAPACITY - 1);
+        }
+
+        private static boolean matches(String candidate, char[] word, int length) {
+            if (candidate.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (candidate.charAt(i) != word[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,67 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.model.DeflateConverter;
+import searchengine.repositories.PageRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Разовый перенос тел старых страниц из page.content в сжатую таблицу page_content.
+ * Запускается, если приложение стартовало с аргументом --compress-page-content.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PageContentMigration implements ApplicationRunner {
+    public static final String OPTION = "compress-page-content";
+    static final int BATCH_SIZE = 200;
+
+    private final PageRepository pageRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (args.containsOption(OPTION)) {
+            log.info("Перенесено тел страниц в page_content: {}", migrate());
+        }
+    }
+
+    public int migrate() {
+        int processed = 0;
+        int lastId = 0;
+        List<Integer> pageIds;
+        do {
+            pageIds = pageRepository.findIdsWithLegacyContentAfter(lastId, PageRequest.of(0, BATCH_SIZE));
+            if (pageIds.isEmpty()) {
+                break;
+            }
+            List<Integer> batch = pageIds;
+            processed += transactionTemplate.execute(status -> migrateBatch(batch));
+            lastId = pageIds.get(pageIds.size() - 1);
+        } while (pageIds.size() == BATCH_SIZE);
+        return processed;
+    }
+
+    private int migrateBatch(List<Integer> pageIds) {
+        List<Object[]> contents = new ArrayList<>();
+        List<Object[]> clearedPages = new ArrayList<>();
+        for (PageRepository.LegacyContent legacy : pageRepository.findLegacyContentByIdIn(pageIds)) {
+            contents.add(new Object[]{legacy.getId(), DeflateConverter.compress(legacy.getContent())});
+            clearedPages.add(new Object[]{legacy.getId()});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO page_content (page_id, body) VALUES (?, ?) " +
+                "ON DUPLICATE KEY UPDATE body = VALUES(body)", contents);
+        jdbcTemplate.batchUpdate("UPDATE page SET content = '' WHERE id = ?", clearedPages);
+        return contents.size();
+    }
+}
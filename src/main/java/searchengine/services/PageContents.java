@@ -0,0 +1,42 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.model.PageContent;
+import searchengine.repositories.PageContentRepository;
+import searchengine.repositories.PageRepository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Чтение исходных тел страниц: сжатых из page_content, а у ещё не перенесённых
+ * старых страниц — из page.content.
+ */
+@Component
+@RequiredArgsConstructor
+public class PageContents {
+    private final PageContentRepository pageContentRepository;
+    private final PageRepository pageRepository;
+
+    public Map<Integer, String> findAll(Collection<Integer> pageIds) {
+        Map<Integer, String> bodies = new HashMap<>(pageIds.size() * 2);
+        for (PageContent content : pageContentRepository.findAllById(pageIds)) {
+            bodies.put(content.getPageId(), content.getBody());
+        }
+        if (bodies.size() < pageIds.size()) {
+            List<Integer> missing = pageIds.stream().filter(id -> !bodies.containsKey(id)).collect(Collectors.toList());
+            for (PageRepository.LegacyContent legacy : pageRepository.findLegacyContentByIdIn(missing)) {
+                bodies.put(legacy.getId(), legacy.getContent());
+            }
+        }
+        return bodies;
+    }
+
+    public String find(int pageId) {
+        return findAll(List.of(pageId)).get(pageId);
+    }
+}
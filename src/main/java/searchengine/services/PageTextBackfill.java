@@ -0,0 +1,54 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import searchengine.model.PageText;
+import searchengine.repositories.PageTextRepository;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Разовое заполнение page_text для страниц, сохранённых до появления этой таблицы.
+ * Запускается, если приложение стартовало с аргументом --backfill-page-text.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PageTextBackfill implements ApplicationRunner {
+    public static final String OPTION = "backfill-page-text";
+    private static final int BATCH_SIZE = 200;
+
+    private final PageContents pageContents;
+    private final PageTextRepository pageTextRepository;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (args.containsOption(OPTION)) {
+            log.info("Заполнено текстов страниц: {}", backfill());
+        }
+    }
+
+    public int backfill() {
+        int processed = 0;
+        int lastId = 0;
+        List<Integer> pageIds;
+        do {
+            pageIds = pageTextRepository.findPageIdsWithoutTextAfter(lastId, PageRequest.of(0, BATCH_SIZE));
+            if (pageIds.isEmpty()) {
+                break;
+            }
+            List<PageText> texts = pageContents.findAll(pageIds).entrySet().stream()
+                    .map(content -> PageTextExtractor.fromStoredContent(content.getKey(), content.getValue()))
+                    .collect(Collectors.toList());
+            pageTextRepository.saveAll(texts);
+            processed += texts.size();
+            lastId = pageIds.get(pageIds.size() - 1);
+        } while (pageIds.size() == BATCH_SIZE);
+        return processed;
+    }
+}
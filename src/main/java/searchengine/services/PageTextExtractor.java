@@ -0,0 +1,75 @@
+package searchengine.services;
+
+import org.apache.tika.Tika;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import searchengine.model.PageText;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Заголовок и видимый текст страницы.
+ */
+public final class PageTextExtractor {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Tika TIKA_INSTANCE = new Tika();
+
+    /**
+     * Разобранное тело ответа. DOM есть только у HTML-страниц; content - то, что сохраняется в page.content.
+     */
+    public record Extracted(Document document, String content, String title, String text) {
+    }
+
+    private PageTextExtractor() {
+    }
+
+    /**
+     * Разбирает тело ответа один раз, выбирая разборщик по Content-Type: HTML - Jsoup,
+     * text/plain читается как есть, остальные форматы - Tika. Текст не-HTML документов обрезается до maxBinaryTextChars.
+     */
+    public static Extracted extract(Connection.Response response, int maxBinaryTextChars) throws IOException, TikaException {
+        String contentType = response.contentType() == null ? "" : response.contentType().toLowerCase(Locale.ROOT);
+        if (contentType.contains("text/html")) {
+            Document doc = response.parse();
+            return new Extracted(doc, doc.html(), title(doc), text(doc, null));
+        }
+        String plainText;
+        if (contentType.startsWith("text/plain")) {
+            plainText = truncate(response.body(), maxBinaryTextChars);
+        } else {
+            Metadata metadata = new Metadata();
+            if (!contentType.isEmpty()) {
+                metadata.set(Metadata.CONTENT_TYPE, contentType);
+            }
+            plainText = TIKA_INSTANCE.parseToString(new ByteArrayInputStream(response.bodyAsBytes()), metadata, maxBinaryTextChars);
+        }
+        return new Extracted(null, plainText, title(null), text(null, plainText));
+    }
+
+    private static String truncate(String text, int maxChars) {
+        if (maxChars < 0 || text.length() <= maxChars) {
+            return text;
+        }
+        int end = Character.isHighSurrogate(text.charAt(maxChars - 1)) ? maxChars - 1 : maxChars;
+        return text.substring(0, end);
+    }
+
+    public static String title(Document doc) {
+        return doc != null ? doc.title() : "";
+    }
+
+    public static String text(Document doc, String plainText) {
+        return doc != null ? doc.text() : WHITESPACE.matcher(plainText).replaceAll(" ").trim();
+    }
+
+    public static PageText fromStoredContent(int pageId, String content) {
+        Document doc = Jsoup.parse(content);
+        return new PageText(pageId, title(doc), text(doc, null));
+    }
+}
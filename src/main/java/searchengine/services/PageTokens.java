@@ -0,0 +1,82 @@
+package searchengine.services;
+
+import searchengine.index.TokenPositions;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Вхождения лемм в текст страницы: частоты для таблицы index и позиции для сниппетов.
+ */
+public class PageTokens implements LemmasFinder.TokenConsumer {
+    private final Map<String, Occurrences> occurrences = new LinkedHashMap<>();
+
+    public static PageTokens of(LemmasFinder lemmasFinder, String text) {
+        return lemmasFinder.collectTokens(text, PageTokens::new, PageTokens::append);
+    }
+
+    @Override
+    public void accept(int start, int end, String lemma) {
+        occurrences.computeIfAbsent(lemma, l -> new Occurrences()).add(start, end - start);
+    }
+
+    /**
+     * Дописывает вхождения следующего куска текста.
+     */
+    public void append(PageTokens next) {
+        next.occurrences.forEach((lemma, list) -> occurrences.computeIfAbsent(lemma, l -> new Occurrences()).addAll(list));
+    }
+
+    public boolean isEmpty() {
+        return occurrences.isEmpty();
+    }
+
+    public Map<String, Integer> lemmaCounts() {
+        Map<String, Integer> counts = new HashMap<>(occurrences.size() * 2);
+        occurrences.forEach((lemma, list) -> counts.put(lemma, list.size));
+        return counts;
+    }
+
+    /**
+     * Кодирует позиции в формате {@link TokenPositions}; леммы без id пропускаются.
+     */
+    public byte[] encodePositions(Map<String, Integer> lemmaIds) {
+        TokenPositions.Writer writer = new TokenPositions.Writer();
+        occurrences.forEach((lemma, list) -> {
+            Integer lemmaId = lemmaIds.get(lemma);
+            if (lemmaId != null) {
+                writer.addGroup(lemmaId, list.starts, list.lengths, list.size);
+            }
+        });
+        return writer.toByteArray();
+    }
+
+    private static final class Occurrences {
+        private int[] starts = new int[4];
+        private int[] lengths = new int[4];
+        private int size;
+
+        void add(int start, int length) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            starts[size] = start;
+            lengths[size] = length;
+            size++;
+        }
+
+        void addAll(Occurrences other) {
+            if (size + other.size > starts.length) {
+                int capacity = Math.max(starts.length * 2, size + other.size);
+                starts = Arrays.copyOf(starts, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            System.arraycopy(other.starts, 0, starts, size, other.size);
+            System.arraycopy(other.lengths, 0, lengths, size, other.size);
+            size += other.size;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package searchengine.services;
+
+import org.jsoup.Connection;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Признаки версии страницы для повторного обхода: заголовки ETag и Last-Modified
+ * и SHA-256 тела ответа.
+ */
+public record PageVersion(String etag, String lastModified, String contentHash) {
+    public static final PageVersion NONE = new PageVersion(null, null, null);
+
+    public static PageVersion of(Connection.Response response) {
+        return new PageVersion(response.header("ETag"), response.header("Last-Modified"), hash(response.bodyAsBytes()));
+    }
+
+    public static String hash(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
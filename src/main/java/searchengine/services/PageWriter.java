@@ -0,0 +1,468 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.PageWriterSettings;
+import searchengine.dto.indexing.StageStatistics;
+import searchengine.model.DeflateConverter;
+import searchengine.index.InvertedIndex;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пакетная запись обработанных страниц в БД, одна транзакция на пачку.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PageWriter {
+    private static final int INDEX_INSERT_CHUNK = 5000;
+
+    private final PageWriterSettings settings;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final InvertedIndex invertedIndex;
+    private final LemmaDictionary lemmaDictionary;
+    private final CrawlMetrics crawlMetrics;
+
+    private BlockingQueue<ParsedPage> queue;
+    private final List<Thread> writers = new ArrayList<>();
+    private final Object idleMonitor = new Object();
+    private long pending;
+    private final AtomicInteger activeBatches = new AtomicInteger();
+    private final Map<Integer, String> siteFailures = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+        for (int i = 0; i < settings.getThreads(); i++) {
+            Thread writer = new Thread(this::drainLoop, "page-writer-" + i);
+            writer.setDaemon(true);
+            writer.start();
+            writers.add(writer);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Ставит страницу в очередь на запись; блокируется, если очередь заполнена.
+     */
+    public void submit(ParsedPage page) throws InterruptedException {
+        synchronized (idleMonitor) {
+            pending++;
+        }
+        try {
+            queue.put(page);
+        } catch (InterruptedException e) {
+            completed(1);
+            throw e;
+        }
+    }
+
+    /**
+     * Дожидается записи всех страниц, поставленных в очередь.
+     */
+    public void awaitIdle() throws InterruptedException {
+        synchronized (idleMonitor) {
+            while (pending > 0) {
+                idleMonitor.wait();
+            }
+        }
+    }
+
+    /**
+     * Отбрасывает ещё не записанные страницы, например при остановке индексации.
+     */
+    public void discardPending() {
+        List<ParsedPage> dropped = new ArrayList<>();
+        queue.drainTo(dropped);
+        completed(dropped.size());
+    }
+
+    /**
+     * Ошибка записи страниц сайта за текущий обход или null, если все страницы записаны.
+     */
+    public String failure(int siteId) {
+        return siteFailures.get(siteId);
+    }
+
+    public void resetFailures() {
+        siteFailures.clear();
+    }
+
+    public StageStatistics statistics() {
+        return new StageStatistics("persist", queue.size(), settings.getQueueCapacity(), activeBatches.get());
+    }
+
+    /**
+     * Синхронно записывает страницы в текущем потоке и транзакции вызывающего кода.
+     */
+    public void write(List<ParsedPage> pages) {
+        List<Runnable> afterCommit = writeBatch(pages);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    afterCommit.forEach(Runnable::run);
+                }
+            });
+        } else {
+            afterCommit.forEach(Runnable::run);
+        }
+    }
+
+    private void drainLoop() {
+        List<ParsedPage> batch = new ArrayList<>(settings.getBatchSize());
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getFlushIntervalMs());
+                while (batch.size() < settings.getBatchSize()) {
+                    queue.drainTo(batch, settings.getBatchSize() - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= settings.getBatchSize() || remaining <= 0) {
+                        break;
+                    }
+                    ParsedPage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                activeBatches.incrementAndGet();
+                try {
+                    persist(batch);
+                } finally {
+                    activeBatches.decrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.error("Ошибка после записи пачки из {} страниц", batch.size(), e);
+            } finally {
+                completed(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Пишет пачку, повторяя при ошибке. Если пачка так и не записалась, страницы пишутся по одной,
+     * чтобы одна проблемная страница не теряла остальные; сайт страницы, которую записать не удалось,
+     * по окончании обхода получает статус FAILED.
+     */
+    private void persist(List<ParsedPage> batch) throws InterruptedException {
+        RuntimeException error = null;
+        for (int attempt = 0; attempt <= settings.getRetries(); attempt++) {
+            if (attempt > 0) {
+                log.warn("Не удалось записать пачку из {} страниц, попытка {}: {}", batch.size(), attempt, error.getMessage());
+                Thread.sleep(settings.getRetryDelayMs() * attempt);
+            }
+            long startedAt = System.nanoTime();
+            List<Runnable> afterCommit;
+            try {
+                afterCommit = transactionTemplate.execute(status -> writeBatch(batch));
+            } catch (RuntimeException e) {
+                error = e;
+                continue;
+            }
+            afterCommitted(afterCommit, batch.size(), startedAt);
+            return;
+        }
+        if (batch.size() == 1) {
+            fail(batch.get(0), error);
+            return;
+        }
+        log.warn("Пачка из {} страниц не записана, страницы записываются по одной", batch.size(), error);
+        for (ParsedPage page : batch) {
+            long startedAt = System.nanoTime();
+            List<Runnable> afterCommit;
+            try {
+                afterCommit = transactionTemplate.execute(status -> writeBatch(List.of(page)));
+            } catch (RuntimeException e) {
+                fail(page, e);
+                continue;
+            }
+            afterCommitted(afterCommit, 1, startedAt);
+        }
+    }
+
+    private void afterCommitted(List<Runnable> afterCommit, int pages, long startedAt) {
+        if (afterCommit != null) {
+            afterCommit.forEach(Runnable::run);
+        }
+        crawlMetrics.recordBatch(pages, System.nanoTime() - startedAt);
+    }
+
+    private void fail(ParsedPage page, RuntimeException e) {
+        log.error("Не удалось записать страницу {}{}", page.site().getUrl(), page.path(), e);
+        siteFailures.putIfAbsent(page.site().getId(), "Не удалось записать страницу " + page.path() + ": " + e.getMessage());
+    }
+
+    private void completed(int count) {
+        if (count == 0) {
+            return;
+        }
+        synchronized (idleMonitor) {
+            pending -= count;
+            if (pending <= 0) {
+                pending = 0;
+                idleMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Сохраняет новые ETag и Last-Modified страницы, тело которой не изменилось.
+     */
+    public void updateValidators(int pageId, PageVersion version) {
+        jdbcTemplate.update("UPDATE page SET etag = ?, last_modified = ? WHERE id = ?",
+                version.etag(), version.lastModified(), pageId);
+    }
+
+    /**
+     * Удаляет страницы сайта вместе с их строками index, page_text и page_content, уменьшая частоты лемм.
+     * Используется в конце инкрементального обхода для страниц, которые больше не встречаются.
+     */
+    public void delete(int siteId, List<Integer> pageIds) {
+        for (int from = 0; from < pageIds.size(); from += settings.getBatchSize()) {
+            List<Integer> chunk = pageIds.subList(from, Math.min(pageIds.size(), from + settings.getBatchSize()));
+            List<Runnable> afterCommit = transactionTemplate.execute(status -> deleteBatch(siteId, chunk));
+            if (afterCommit != null) {
+                afterCommit.forEach(Runnable::run);
+            }
+        }
+    }
+
+    private List<Runnable> deleteBatch(int siteId, List<Integer> pageIds) {
+        Map<Integer, Map<String, StoredIndex>> stored = loadIndices(pageIds);
+        String ids = placeholders(pageIds.size());
+        Object[] args = pageIds.toArray();
+        jdbcTemplate.update("DELETE FROM `index` WHERE page_id IN (" + ids + ")", args);
+        jdbcTemplate.update("DELETE FROM page_text WHERE page_id IN (" + ids + ")", args);
+        jdbcTemplate.update("DELETE FROM page_content WHERE page_id IN (" + ids + ")", args);
+        jdbcTemplate.update("DELETE FROM page WHERE id IN (" + ids + ")", args);
+
+        List<Runnable> afterCommit = new ArrayList<>();
+        stored.forEach((pageId, indices) -> afterCommit.add(() -> {
+            Map<String, Integer> lemmaIds = new HashMap<>(indices.size() * 2);
+            indices.forEach((lemma, index) -> {
+                lemmaIds.put(lemma, index.lemmaId());
+                LemmaDictionary.Entry entry = lemmaDictionary.find(siteId, lemma);
+                if (entry != null) {
+                    lemmaDictionary.addFrequency(entry, -1);
+                }
+            });
+            invertedIndex.removePage(siteId, pageId, lemmaIds);
+        }));
+        return afterCommit;
+    }
+
+    /**
+     * Пишет пачку и возвращает действия, которые нужно выполнить после фиксации транзакции.
+     * Для уже сохранённых страниц строки index не пересоздаются: удаляются исчезнувшие леммы,
+     * обновляются изменившиеся ранги и добавляются новые леммы.
+     */
+    private List<Runnable> writeBatch(List<ParsedPage> pages) {
+        int[] pageIds = savePages(pages);
+        saveContents(pages, pageIds);
+        List<Integer> updatedPageIds = new ArrayList<>();
+        for (int i = 0; i < pages.size(); i++) {
+            if (pages.get(i).isUpdate()) {
+                updatedPageIds.add(pageIds[i]);
+            }
+        }
+        Map<Integer, Map<String, StoredIndex>> storedIndices = loadIndices(updatedPageIds);
+
+        List<Object[]> texts = new ArrayList<>();
+        List<Object[]> deletedTexts = new ArrayList<>();
+        List<Object[]> indices = new ArrayList<>();
+        List<Object[]> changedRanks = new ArrayList<>();
+        List<Object[]> deletedIndices = new ArrayList<>();
+        List<LemmaDictionary.Entry> usedLemmas = new ArrayList<>();
+        List<Runnable> afterCommit = new ArrayList<>();
+        for (int i = 0; i < pages.size(); i++) {
+            ParsedPage page = pages.get(i);
+            int siteId = page.site().getId();
+            int pageId = pageIds[i];
+            Map<String, StoredIndex> stored = storedIndices.getOrDefault(pageId, Collections.emptyMap());
+            if (!page.hasText() && stored.isEmpty()) {
+                if (page.isUpdate()) {
+                    deletedTexts.add(new Object[]{pageId});
+                }
+                continue;
+            }
+            Map<String, Integer> counts = page.hasText() ? page.tokens().lemmaCounts() : Collections.emptyMap();
+            Map<String, Integer> lemmaIds = new HashMap<>(counts.size() * 2);
+            List<LemmaDictionary.Entry> addedLemmas = new ArrayList<>();
+            counts.forEach((lemma, count) -> {
+                LemmaDictionary.Entry entry = lemmaDictionary.resolve(siteId, lemma);
+                lemmaIds.put(lemma, entry.getId());
+                StoredIndex previous = stored.get(lemma);
+                if (previous == null) {
+                    addedLemmas.add(entry);
+                    indices.add(new Object[]{pageId, entry.getId(), count.floatValue()});
+                } else if (previous.rank() != count.floatValue()) {
+                    changedRanks.add(new Object[]{count.floatValue(), pageId, entry.getId()});
+                }
+            });
+            Map<String, Integer> removedLemmaIds = new HashMap<>();
+            List<LemmaDictionary.Entry> removedLemmas = new ArrayList<>();
+            stored.forEach((lemma, previous) -> {
+                if (!counts.containsKey(lemma)) {
+                    removedLemmaIds.put(lemma, previous.lemmaId());
+                    deletedIndices.add(new Object[]{pageId, previous.lemmaId()});
+                    LemmaDictionary.Entry entry = lemmaDictionary.find(siteId, lemma);
+                    if (entry != null) {
+                        removedLemmas.add(entry);
+                    }
+                }
+            });
+            usedLemmas.addAll(addedLemmas);
+            if (page.hasText()) {
+                byte[] positions = page.tokens().isEmpty() ? null : page.tokens().encodePositions(lemmaIds);
+                texts.add(new Object[]{pageId, page.title(), page.text(), positions});
+            } else {
+                deletedTexts.add(new Object[]{pageId});
+            }
+            afterCommit.add(() -> {
+                addedLemmas.forEach(entry -> lemmaDictionary.addFrequency(entry, 1));
+                removedLemmas.forEach(entry -> lemmaDictionary.addFrequency(entry, -1));
+                invertedIndex.removePage(siteId, pageId, removedLemmaIds);
+                invertedIndex.addPage(siteId, pageId, lemmaIds, counts);
+            });
+        }
+        // Строки новых лемм должны появиться раньше строк index, которые на них ссылаются.
+        List<LemmaDictionary.Entry> createdLemmas = lemmaDictionary.persistNew(usedLemmas);
+        afterCommit.add(0, () -> lemmaDictionary.markPersisted(createdLemmas));
+
+        jdbcTemplate.batchUpdate("INSERT INTO page_text (page_id, title, text, positions) VALUES (?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE title = VALUES(title), text = VALUES(text), positions = VALUES(positions)", texts);
+        jdbcTemplate.batchUpdate("DELETE FROM page_text WHERE page_id = ?", deletedTexts);
+        jdbcTemplate.batchUpdate("DELETE FROM `index` WHERE page_id = ? AND lemma_id = ?", deletedIndices);
+        jdbcTemplate.batchUpdate("UPDATE `index` SET `rank` = ? WHERE page_id = ? AND lemma_id = ?", changedRanks);
+        jdbcTemplate.batchUpdate("INSERT INTO `index` (page_id, lemma_id, `rank`) VALUES (?, ?, ?)", indices, INDEX_INSERT_CHUNK,
+                (statement, row) -> {
+                    statement.setInt(1, (Integer) row[0]);
+                    statement.setInt(2, (Integer) row[1]);
+                    statement.setFloat(3, (Float) row[2]);
+                });
+        return afterCommit;
+    }
+
+    /**
+     * Пишет тела страниц в page_content сжатыми; page.content у новых записей остаётся пустым.
+     */
+    private void saveContents(List<ParsedPage> pages, int[] pageIds) {
+        List<Object[]> contents = new ArrayList<>();
+        List<Object[]> deletedContents = new ArrayList<>();
+        for (int i = 0; i < pages.size(); i++) {
+            String content = pages.get(i).content();
+            if (content != null && !content.isEmpty()) {
+                contents.add(new Object[]{pageIds[i], DeflateConverter.compress(content)});
+            } else if (pages.get(i).isUpdate()) {
+                deletedContents.add(new Object[]{pageIds[i]});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO page_content (page_id, body) VALUES (?, ?) " +
+                "ON DUPLICATE KEY UPDATE body = VALUES(body)", contents);
+        jdbcTemplate.batchUpdate("DELETE FROM page_content WHERE page_id = ?", deletedContents);
+    }
+
+    private int[] savePages(List<ParsedPage> pages) {
+        List<ParsedPage> created = new ArrayList<>();
+        List<Object[]> updated = new ArrayList<>();
+        for (ParsedPage page : pages) {
+            if (page.isUpdate()) {
+                updated.add(new Object[]{page.code(), "",
+                        page.version().etag(), page.version().lastModified(), page.version().contentHash(), page.existingPageId()});
+            } else {
+                created.add(page);
+            }
+        }
+        jdbcTemplate.batchUpdate("UPDATE page SET code = ?, content = ?, etag = ?, last_modified = ?, content_hash = ? WHERE id = ?",
+                updated);
+        int[] createdIds = insertPages(created);
+
+        int[] ids = new int[pages.size()];
+        int next = 0;
+        for (int i = 0; i < pages.size(); i++) {
+            ids[i] = pages.get(i).isUpdate() ? pages.get(i).existingPageId() : createdIds[next++];
+        }
+        return ids;
+    }
+
+    private int[] insertPages(List<ParsedPage> pages) {
+        if (pages.isEmpty()) {
+            return new int[0];
+        }
+        return jdbcTemplate.execute((ConnectionCallback<int[]>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO page (site_id, path, code, content, etag, last_modified, content_hash) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                for (ParsedPage page : pages) {
+                    statement.setInt(1, page.site().getId());
+                    statement.setString(2, page.path());
+                    statement.setInt(3, page.code());
+                    statement.setString(4, "");
+                    statement.setString(5, page.version().etag());
+                    statement.setString(6, page.version().lastModified());
+                    statement.setString(7, page.version().contentHash());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                int[] ids = new int[pages.size()];
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for (int i = 0; i < ids.length && keys.next(); i++) {
+                        ids[i] = keys.getInt(1);
+                    }
+                }
+                return ids;
+            }
+        });
+    }
+
+    /**
+     * Загружает сохранённые строки index страниц: лемма -> (id леммы, ранг).
+     */
+    private Map<Integer, Map<String, StoredIndex>> loadIndices(List<Integer> pageIds) {
+        Map<Integer, Map<String, StoredIndex>> indices = new HashMap<>();
+        if (pageIds.isEmpty()) {
+            return indices;
+        }
+        jdbcTemplate.query("SELECT i.page_id, i.lemma_id, l.lemma, i.`rank` FROM `index` i JOIN lemma l ON l.id = i.lemma_id " +
+                        "WHERE i.page_id IN (" + placeholders(pageIds.size()) + ")",
+                (RowCallbackHandler) resultSet -> indices.computeIfAbsent(resultSet.getInt(1), id -> new HashMap<>())
+                        .put(resultSet.getString(3), new StoredIndex(resultSet.getInt(2), resultSet.getFloat(4))),
+                pageIds.toArray());
+        return indices;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private record StoredIndex(int lemmaId, float rank) {
+    }
+}
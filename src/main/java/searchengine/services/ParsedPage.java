@@ -0,0 +1,32 @@
+package searchengine.services;
+
+import searchengine.model.Site;
+
+/**
+ * Результат обработки страницы краулером, ожидающий записи в БД.
+ * Если existingPageId больше нуля, страница заменяет уже сохранённую.
+ */
+public record ParsedPage(Site site, String path, int code, String content, String title, String text, PageTokens tokens,
+                         PageVersion version, int existingPageId) {
+
+    public static ParsedPage indexed(Site site, String path, String content, String title, String text, PageTokens tokens,
+                                     PageVersion version) {
+        return new ParsedPage(site, path, 200, content, title, text, tokens, version, 0);
+    }
+
+    public static ParsedPage withStatus(Site site, String path, int code, String content) {
+        return new ParsedPage(site, path, code, content, null, null, null, PageVersion.NONE, 0);
+    }
+
+    public ParsedPage replacing(int pageId) {
+        return new ParsedPage(site, path, code, content, title, text, tokens, version, pageId);
+    }
+
+    public boolean hasText() {
+        return text != null;
+    }
+
+    public boolean isUpdate() {
+        return existingPageId > 0;
+    }
+}
@@ -0,0 +1,113 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.dto.indexing.StageStatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Стадия конвейера обхода: ограниченная блокирующая очередь задач и свой пул потоков.
+ */
+@Slf4j
+public class PipelineStage {
+    private final String name;
+    private final int capacity;
+    private final BlockingQueue<Task> queue;
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final Object idleMonitor = new Object();
+    private long pending;
+
+    public interface Task {
+        void run() throws InterruptedException;
+    }
+
+    public PipelineStage(String name, int threads, int capacity) {
+        this.name = name;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::workLoop, name + "-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Ставит задачу в очередь стадии; блокируется, если очередь заполнена.
+     */
+    public void submit(Task task) throws InterruptedException {
+        synchronized (idleMonitor) {
+            pending++;
+        }
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            completed(1);
+            throw e;
+        }
+    }
+
+    /**
+     * Дожидается выполнения всех поставленных задач.
+     */
+    public void awaitIdle() throws InterruptedException {
+        synchronized (idleMonitor) {
+            while (pending > 0) {
+                idleMonitor.wait();
+            }
+        }
+    }
+
+    public void shutdown() {
+        workers.forEach(Thread::interrupt);
+        List<Task> dropped = new ArrayList<>();
+        queue.drainTo(dropped);
+        completed(dropped.size());
+    }
+
+    public StageStatistics statistics() {
+        return new StageStatistics(name, queue.size(), capacity, active.get());
+    }
+
+    private void workLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            active.incrementAndGet();
+            try {
+                task.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.error("Ошибка в стадии {}", name, e);
+            } finally {
+                active.decrementAndGet();
+                completed(1);
+            }
+        }
+    }
+
+    private void completed(int count) {
+        if (count == 0) {
+            return;
+        }
+        synchronized (idleMonitor) {
+            pending -= count;
+            if (pending <= 0) {
+                pending = 0;
+                idleMonitor.notifyAll();
+            }
+        }
+    }
+}
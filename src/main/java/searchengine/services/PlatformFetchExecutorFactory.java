@@ -0,0 +1,57 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.AnyNestedCondition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Загрузка в пуле из fetch-threads платформенных потоков. Используется и при fetch-mode: virtual,
+ * если приложение собрано без профиля java21.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@Conditional(PlatformFetchExecutorFactory.PlatformMode.class)
+public class PlatformFetchExecutorFactory implements FetchExecutorFactory {
+    private final CrawlerSettings settings;
+
+    @Override
+    public ExecutorService create() {
+        if (!"platform".equals(settings.getFetchMode())) {
+            log.warn("Режим загрузки {} недоступен в этой сборке (нужен профиль java21), используются платформенные потоки",
+                    settings.getFetchMode());
+        }
+        return Executors.newFixedThreadPool(settings.getFetchThreads(), new ThreadFactory() {
+            private final AtomicInteger number = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "crawl-fetcher-" + number.getAndIncrement());
+            }
+        });
+    }
+
+    static class PlatformMode extends AnyNestedCondition {
+        PlatformMode() {
+            super(ConfigurationPhase.REGISTER_BEAN);
+        }
+
+        @ConditionalOnProperty(name = "indexing-settings.crawler.fetch-mode", havingValue = "platform", matchIfMissing = true)
+        static class PlatformSelected {
+        }
+
+        @ConditionalOnMissingClass("searchengine.services.VirtualThreadFetchExecutorFactory")
+        static class VirtualUnavailable {
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Планирует поисковый запрос по документным частотам лемм активных сайтов.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class QueryPlanner {
+    private final JdbcTemplate jdbcTemplate;
+    private final SearchSettings settings;
+
+    private volatile Map<Integer, SiteFrequencies> frequenciesBySite = Map.of();
+    private final AtomicLong generation = new AtomicLong();
+
+    private record SiteFrequencies(int pageCount, Map<String, Integer> documentFrequencies) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        new Thread(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                log.error("Не удалось загрузить частоты лемм", e);
+            }
+        }, "query-planner-loader").start();
+    }
+
+    /**
+     * Перечитывает частоты лемм и число страниц активных сайтов.
+     */
+    public void refresh() {
+        Map<Integer, Map<String, Integer>> frequencies = new HashMap<>();
+        jdbcTemplate.query("SELECT l.site_id, l.lemma, l.frequency FROM lemma l JOIN site s ON s.id = l.site_id WHERE s.active",
+                (RowCallbackHandler) rs -> frequencies.computeIfAbsent(rs.getInt(1), id -> new HashMap<>())
+                        .put(rs.getString(2), rs.getInt(3)));
+        Map<Integer, SiteFrequencies> loaded = new HashMap<>();
+        jdbcTemplate.query("SELECT p.site_id, COUNT(*) FROM page p JOIN site s ON s.id = p.site_id " +
+                        "WHERE s.active AND p.code = 200 GROUP BY p.site_id",
+                (RowCallbackHandler) rs -> loaded.put(rs.getInt(1),
+                        new SiteFrequencies(rs.getInt(2), frequencies.getOrDefault(rs.getInt(1), Map.of()))));
+        frequenciesBySite = loaded;
+        generation.incrementAndGet();
+        log.info("Частоты лемм обновлены: {} сайтов", loaded.size());
+    }
+
+    /**
+     * Номер версии таблиц частот; меняется при каждом {@link #refresh()}, так как от таблиц зависит,
+     * какие леммы отбрасываются.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Возвращает леммы запроса в порядке пересечения, от самой редкой на указанных сайтах.
+     * Леммы, встречающиеся более чем на {@link SearchSettings#getMaxLemmaPageShare()} страниц,
+     * отбрасываются; самая редкая лемма остаётся всегда. Леммы, которых нет в таблицах
+     * (например, появившиеся после их обновления), считаются редкими.
+     */
+    public List<String> plan(Collection<String> lemmas, Collection<Integer> siteIds) {
+        Map<Integer, SiteFrequencies> current = frequenciesBySite;
+        long pageCount = 0;
+        Map<String, Long> documentFrequencies = new HashMap<>();
+        for (String lemma : lemmas) {
+            documentFrequencies.put(lemma, 0L);
+        }
+        for (int siteId : siteIds) {
+            SiteFrequencies site = current.get(siteId);
+            if (site == null) {
+                continue;
+            }
+            pageCount += site.pageCount();
+            for (String lemma : lemmas) {
+                documentFrequencies.merge(lemma, (long) site.documentFrequencies().getOrDefault(lemma, 0), Long::sum);
+            }
+        }
+
+        List<String> ordered = new ArrayList<>(lemmas);
+        ordered.sort(Comparator.<String>comparingLong(documentFrequencies::get).thenComparing(Comparator.naturalOrder()));
+        if (pageCount == 0 || ordered.isEmpty()) {
+            return ordered;
+        }
+        double maxFrequency = settings.getMaxLemmaPageShare() * pageCount;
+        List<String> planned = new ArrayList<>(ordered.size());
+        planned.add(ordered.get(0));
+        for (int i = 1; i < ordered.size(); i++) {
+            if (documentFrequencies.get(ordered.get(i)) <= maxFrequency) {
+                planned.add(ordered.get(i));
+            }
+        }
+        return planned;
+    }
+}
@@ -0,0 +1,45 @@
+package searchengine.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики поиска для Actuator.
+ */
+@Component
+public class SearchMetrics {
+    private final Timer cachedQueries;
+    private final Timer rankedQueries;
+    private final DistributionSummary candidates;
+
+    public SearchMetrics(MeterRegistry registry) {
+        this.cachedQueries = queryTimer(registry, "hit");
+        this.rankedQueries = queryTimer(registry, "miss");
+        this.candidates = DistributionSummary.builder("search.candidates")
+                .baseUnit("pages")
+                .description("Страницы, содержащие все леммы запроса, до ранжирования")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry);
+    }
+
+    public void recordQuery(boolean cached, long nanos) {
+        (cached ? cachedQueries : rankedQueries).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordCandidates(int pages) {
+        candidates.record(pages);
+    }
+
+    private static Timer queryTimer(MeterRegistry registry, String cache) {
+        return Timer.builder("search.query")
+                .tag("cache", cache)
+                .description("Поисковый запрос от лемматизации до построения сниппетов")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
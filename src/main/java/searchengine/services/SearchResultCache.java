@@ -0,0 +1,87 @@
+package searchengine.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.index.TopPages;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Ранжированные результаты недавних запросов по набору лемм и сайтам.
+ */
+@Component
+public class SearchResultCache implements MeterBinder {
+    private final Cache<Key, Entry> cache;
+
+    public SearchResultCache(SearchSettings settings) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(settings.getResultCacheMaxPages())
+                .weigher((Key key, Entry entry) -> Math.max(1, entry.ranking().pages().length))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param needed сколько первых страниц выдачи нужно запросу
+     * @return результат или null, если записи нет, она устарела или в ней меньше нужного числа страниц
+     */
+    public Ranking find(Key key, List<Integer> siteIds, long version, long plannerGeneration, int needed) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.version() != version || entry.plannerGeneration() != plannerGeneration || !entry.siteIds().equals(siteIds)) {
+            cache.asMap().remove(key, entry);
+            return null;
+        }
+        Ranking ranking = entry.ranking();
+        return ranking.pages().length < Math.min(needed, ranking.count()) ? null : ranking;
+    }
+
+    /**
+     * @param version           версия индекса, прочитанная до вычисления результата
+     * @param plannerGeneration версия частот планировщика, прочитанная до планирования запроса
+     */
+    public void put(Key key, List<Integer> siteIds, long version, long plannerGeneration, Ranking ranking) {
+        cache.put(key, new Entry(List.copyOf(siteIds), version, plannerGeneration, ranking));
+    }
+
+    /**
+     * Метрики кэша (cache.* с тегом cache=search.results): попадания, промахи, вытеснения и размер.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "search.results");
+    }
+
+    public static Key key(List<String> sortedLemmas, String siteUrl) {
+        return new Key(List.copyOf(sortedLemmas), siteUrl == null ? "" : siteUrl);
+    }
+
+    public record Key(List<String> lemmas, String siteUrl) {
+    }
+
+    /**
+     * @param pages ключи {@link TopPages} лучших страниц по убыванию релевантности
+     * @param count число всех найденных страниц
+     */
+    public record Ranking(long[] pages, int count) {
+        /**
+         * Та же выдача без указанных страниц.
+         */
+        public Ranking without(Collection<Integer> pageIds) {
+            long[] kept = Arrays.stream(pages).filter(page -> !pageIds.contains(TopPages.pageId(page))).toArray();
+            return new Ranking(kept, count - (pages.length - kept.length));
+        }
+    }
+
+    private record Entry(List<Integer> siteIds, long version, long plannerGeneration, Ranking ranking) {
+    }
+}
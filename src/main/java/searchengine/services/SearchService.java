@@ -2,15 +2,20 @@ package searchengine.services;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import searchengine.config.SearchSettings;
 import searchengine.dto.search.SearchData;
 import searchengine.dto.search.SearchResponse;
+import searchengine.index.InvertedIndex;
+import searchengine.index.SearchHits;
+import searchengine.index.TopPages;
 import searchengine.model.Lemma;
-import searchengine.model.Page;
+import searchengine.model.PageText;
 import searchengine.model.Site;
 import searchengine.repositories.IndexRepository;
 import searchengine.repositories.LemmaRepository;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.PageTextRepository;
 import searchengine.repositories.SiteRepository;
-import org.jsoup.Jsoup;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -21,31 +26,34 @@ public class SearchService {
 
     private final LemmaRepository lemmaRepository;
     private final IndexRepository indexRepository;
+    private final PageRepository pageRepository;
+    private final PageTextRepository pageTextRepository;
+    private final PageContents pageContents;
     private final SiteRepository siteRepository;
+    private final InvertedIndex invertedIndex;
     private final LemmasFinder lemmasFinder;
-    private final IndexingService indexingService;
+    private final SnippetBuilder snippetBuilder;
+    private final SearchResultCache searchResultCache;
+    private final QueryPlanner queryPlanner;
+    private final SearchMetrics searchMetrics;
+    private final SearchSettings searchSettings;
 
     public SearchResponse search(String query, String siteUrl, int offset, int limit) {
-        if (indexingService.isIndexing()) {
-            SearchResponse response = new SearchResponse();
-            response.setResult(false);
-            response.setError("Индексация не завершена");
-            return response;
-        }
-
         if (query == null || query.isEmpty()) {
             SearchResponse response = new SearchResponse();
             response.setResult(false);
             response.setError("Задан пустой поисковый запрос");
             return response;
         }
+        long startedAt = System.nanoTime();
 
         List<Site> sites;
         if (siteUrl != null && !siteUrl.isEmpty()) {
-            Optional<Site> siteOptional = siteRepository.findByUrl(siteUrl);
+            Optional<Site> siteOptional = siteRepository.findByUrlAndActiveTrue(siteUrl);
             sites = siteOptional.stream().collect(Collectors.toList());
         } else {
-            sites = siteRepository.findAll();
+            // Во время полной переиндексации новое поколение сайтов неактивно и в поиск не попадает.
+            sites = siteRepository.findByActiveTrue();
         }
 
         Map<String, Integer> queryLemmas = lemmasFinder.findLemmas(query);
@@ -57,136 +65,151 @@ public class SearchService {
             return response;
         }
 
-        List<String> sortedLemmaStrings = queryLemmas.keySet().stream()
-                .sorted(Comparator.comparingInt(lemmaText -> lemmaRepository.countByLemmaAndSiteIn(lemmaText, sites)))
-                .collect(Collectors.toList());
-
-        List<Page> foundPages = findPagesByLemmas(sortedLemmaStrings, sites);
-
-        List<SearchData> searchResults = new ArrayList<>();
-        if (!foundPages.isEmpty()) {
-            searchResults = calculateRelevanceAndBuildSnippets(foundPages, queryLemmas);
+        List<Integer> siteIds = sites.stream().map(Site::getId).collect(Collectors.toList());
+        SearchResultCache.Key cacheKey = SearchResultCache.key(queryLemmas.keySet().stream().sorted().collect(Collectors.toList()), siteUrl);
+        long indexVersion = invertedIndex.version(siteIds);
+        long plannerGeneration = queryPlanner.generation();
+        int needed = (int) Math.min(Integer.MAX_VALUE, (long) Math.max(0, offset) + Math.max(0, limit));
+        SearchResultCache.Ranking ranking = searchResultCache.find(cacheKey, siteIds, indexVersion, plannerGeneration, needed);
+        boolean cached = ranking != null;
+        if (ranking == null) {
+            List<String> plannedLemmas = queryPlanner.plan(queryLemmas.keySet(), siteIds);
+            SearchHits foundPages = findPagesByLemmas(plannedLemmas, sites);
+            searchMetrics.recordCandidates(foundPages.size());
+            // Ранжируются только страницы, которые могут понадобиться выдаче, а не все найденные.
+            ranking = new SearchResultCache.Ranking(
+                    TopPages.select(foundPages, Math.max(needed, searchSettings.getMaxCachedResults())), foundPages.size());
+            searchResultCache.put(cacheKey, siteIds, indexVersion, plannerGeneration, ranking);
         }
 
+        ResultWindow window = loadWindow(ranking.pages(), offset, limit);
+        while (!window.missing().isEmpty()) {
+            // Страницы удалены после ранжирования: выдача запоминается без них, окно добирается следующими.
+            ranking = ranking.without(window.missing());
+            searchResultCache.put(cacheKey, siteIds, indexVersion, plannerGeneration, ranking);
+            window = loadWindow(ranking.pages(), offset, limit);
+        }
         SearchResponse response = new SearchResponse();
         response.setResult(true);
-        response.setCount(searchResults.size());
-        response.setData(searchResults.stream()
-                .skip(offset)
-                .limit(limit)
-                .collect(Collectors.toList()));
+        response.setCount(ranking.count());
+        response.setData(buildSearchData(window, sites, queryLemmas));
+        searchMetrics.recordQuery(cached, System.nanoTime() - startedAt);
 
         return response;
     }
 
-    private List<Page> findPagesByLemmas(List<String> sortedLemmas, List<Site> sites) {
-        if (sortedLemmas.isEmpty()) {
-            return new ArrayList<>();
+    private SearchHits findPagesByLemmas(List<String> sortedLemmas, List<Site> sites) {
+        if (sortedLemmas.isEmpty() || sites.isEmpty()) {
+            return SearchHits.EMPTY;
         }
-
-        String rarestLemmaText = sortedLemmas.get(0);
-        List<Page> pagesWithRarestLemma = indexRepository.findPagesByLemmaAndSiteIn(rarestLemmaText, sites);
-
-        List<Page> finalPages = new ArrayList<>(pagesWithRarestLemma);
-        for (int i = 1; i < sortedLemmas.size(); i++) {
-            String currentLemmaText = sortedLemmas.get(i);
-            List<Page> pagesWithCurrentLemma = indexRepository.findPagesByLemmaAndSiteIn(currentLemmaText, sites);
-            finalPages.retainAll(pagesWithCurrentLemma);
+        if (invertedIndex.isReady()) {
+            List<Integer> siteIds = sites.stream().map(Site::getId).collect(Collectors.toList());
+            return invertedIndex.findPages(siteIds, sortedLemmas);
         }
 
-        return finalPages;
+        // Пока резидентный индекс загружается, пересечение и сумма рангов считаются одним запросом.
+        List<IndexRepository.PageRelevance> rows = indexRepository.findRelevanceByLemmasAndSiteIn(sortedLemmas, sites, sortedLemmas.size());
+        int[] pageIds = new int[rows.size()];
+        float[] relevance = new float[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            pageIds[i] = rows.get(i).getPageId();
+            relevance[i] = rows.get(i).getRelevance().floatValue();
+        }
+        return new SearchHits(pageIds, relevance, rows.size());
     }
 
-    private List<SearchData> calculateRelevanceAndBuildSnippets(List<Page> foundPages, Map<String, Integer> queryLemmas) {
-        List<SearchData> searchResults = new ArrayList<>();
-        Map<Page, Float> pageAbsoluteRelevanceMap = new HashMap<>();
-
-        for (Page page : foundPages) {
-            float absoluteRelevance = 0;
-            for (String lemmaText : queryLemmas.keySet()) {
-                Optional<Lemma> lemmaOptional = lemmaRepository.findByLemmaAndSite(lemmaText, page.getSite());
-                if (lemmaOptional.isPresent()) {
-                    Lemma lemma = lemmaOptional.get();
-                    Float rank = indexRepository.findRankByPageAndLemma(page.getId(), lemma.getId());
-                    if (rank != null) {
-                        absoluteRelevance += rank;
-                    }
-                }
-            }
-            pageAbsoluteRelevanceMap.put(page, absoluteRelevance);
+    /**
+     * Страницы выдачи с offset по offset + limit и их данные; страницы, которых уже нет в БД, попадают в missing.
+     *
+     * @param topPages лучшие найденные страницы по убыванию релевантности
+     */
+    private ResultWindow loadWindow(long[] topPages, int offset, int limit) {
+        int from = Math.max(0, Math.min(offset, topPages.length));
+        int to = (int) Math.min(topPages.length, (long) from + Math.max(0, limit));
+        List<Integer> windowPageIds = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            windowPageIds.add(TopPages.pageId(topPages[i]));
         }
+        if (windowPageIds.isEmpty()) {
+            return new ResultWindow(topPages, from, to, Map.of(), Map.of(), Set.of());
+        }
+        Map<Integer, PageRepository.PageMetadata> pagesById = pageRepository.findMetadataByIdIn(windowPageIds).stream()
+                .collect(Collectors.toMap(PageRepository.PageMetadata::getId, page -> page));
+        Map<Integer, PageText> textsById = findPageTexts(windowPageIds);
+        Set<Integer> missing = windowPageIds.stream()
+                .filter(id -> !pagesById.containsKey(id) || !textsById.containsKey(id))
+                .collect(Collectors.toSet());
+        return new ResultWindow(topPages, from, to, pagesById, textsById, missing);
+    }
 
-        if (pageAbsoluteRelevanceMap.isEmpty()) {
+    private List<SearchData> buildSearchData(ResultWindow window, List<Site> sites, Map<String, Integer> queryLemmas) {
+        if (window.from() >= window.to()) {
             return new ArrayList<>();
         }
-
-        float maxRelevance = Collections.max(pageAbsoluteRelevanceMap.values());
-
-        for (Page page : foundPages) {
-            float relativeRelevance = pageAbsoluteRelevanceMap.get(page) / maxRelevance;
-
-            SearchData data = new SearchData();
-            data.setSite(page.getSite().getUrl());
-            data.setSiteName(page.getSite().getName());
-            data.setUri(page.getPath());
-            data.setTitle(Jsoup.parse(page.getContent()).title());
-            data.setRelevance(relativeRelevance);
-            data.setSnippet(buildSnippet(page.getContent(), queryLemmas.keySet()));
-
-            searchResults.add(data);
+        long[] topPages = window.topPages();
+        float maxRelevance = TopPages.relevance(topPages[0]);
+        Map<Integer, Site> sitesById = sites.stream().collect(Collectors.toMap(Site::getId, site -> site));
+
+        List<String> lemmas = new ArrayList<>(queryLemmas.keySet());
+        Map<Integer, Map<Integer, Integer>> termsBySite = new HashMap<>();
+
+        List<SearchData> searchResults = new ArrayList<>(window.to() - window.from());
+        for (int i = window.from(); i < window.to(); i++) {
+            int pageId = TopPages.pageId(topPages[i]);
+            PageRepository.PageMetadata page = window.pages().get(pageId);
+            Site site = sitesById.get(page.getSiteId());
+            Map<Integer, Integer> termsByLemmaId = termsBySite.computeIfAbsent(site.getId(), id -> findQueryTerms(site, lemmas));
+            searchResults.add(buildSearchData(page, window.texts().get(pageId), site, TopPages.relevance(topPages[i]) / maxRelevance,
+                    termsByLemmaId, queryLemmas.keySet()));
         }
-
-        searchResults.sort(Comparator.comparing(SearchData::getRelevance).reversed());
-
         return searchResults;
     }
 
-    private static final int MAX_SNIPPET_LENGTH = 300;
-
-    private String buildSnippet(String pageContent, Set<String> queryLemmas) {
-        String pageText = Jsoup.parse(pageContent).text();
-        List<String> textWords = Arrays.asList(pageText.toLowerCase().split("\\s+"));
-        Set<Integer> lemmaPositions = new HashSet<>();
-
-        for (int i = 0; i < textWords.size(); i++) {
-            String word = textWords.get(i).replaceAll("[^а-яё]", "");
-            if (word.isEmpty()) {
-                continue;
+    /**
+     * Сопоставляет id лемм запроса на сайте с их порядковыми номерами в запросе.
+     */
+    private Map<Integer, Integer> findQueryTerms(Site site, List<String> lemmas) {
+        Map<Integer, Integer> terms = new HashMap<>();
+        if (invertedIndex.isReady()) {
+            for (int term = 0; term < lemmas.size(); term++) {
+                Integer lemmaId = invertedIndex.findLemmaId(site.getId(), lemmas.get(term));
+                if (lemmaId != null) {
+                    terms.put(lemmaId, term);
+                }
             }
-            Set<String> wordLemmas = lemmasFinder.findLemmas(word).keySet();
-            if (wordLemmas.stream().anyMatch(queryLemmas::contains)) {
-                lemmaPositions.add(i);
+        } else {
+            for (Lemma lemma : lemmaRepository.findAllBySiteAndLemmaIn(site, lemmas)) {
+                terms.put(lemma.getId(), lemmas.indexOf(lemma.getLemma()));
             }
         }
+        return terms;
+    }
 
-        StringBuilder snippet = new StringBuilder();
-        List<Integer> sortedPositions = new ArrayList<>(lemmaPositions);
-        Collections.sort(sortedPositions);
-
-        int i = 0;
-        while (i < sortedPositions.size() && snippet.length() < MAX_SNIPPET_LENGTH) {
-            int position = sortedPositions.get(i);
-            int start = Math.max(0, position - 5);
-            int end = Math.min(textWords.size(), position + 5);
-
-            String fragment = String.join(" ", textWords.subList(start, end))
-                    .replaceAll("\\s+", " ").trim();
-
-            snippet.append(fragment).append("... ");
-            i++;
+    private Map<Integer, PageText> findPageTexts(List<Integer> pageIds) {
+        Map<Integer, PageText> texts = pageTextRepository.findAllById(pageIds).stream()
+                .collect(Collectors.toMap(PageText::getPageId, text -> text));
+        if (texts.size() < pageIds.size()) {
+            // Страницы, проиндексированные до появления page_text и ещё не обработанные PageTextBackfill.
+            List<Integer> missing = pageIds.stream().filter(id -> !texts.containsKey(id)).collect(Collectors.toList());
+            pageContents.findAll(missing).forEach((pageId, content) ->
+                    texts.put(pageId, PageTextExtractor.fromStoredContent(pageId, content)));
         }
+        return texts;
+    }
 
-        return highlightLemmas(snippet.toString(), queryLemmas);
+    private SearchData buildSearchData(PageRepository.PageMetadata page, PageText pageText, Site site, float relativeRelevance,
+                                       Map<Integer, Integer> termsByLemmaId, Set<String> queryLemmas) {
+        SearchData data = new SearchData();
+        data.setSite(site.getUrl());
+        data.setSiteName(site.getName());
+        data.setUri(page.getPath());
+        data.setTitle(pageText.getTitle());
+        data.setRelevance(relativeRelevance);
+        data.setSnippet(snippetBuilder.build(pageText, termsByLemmaId, queryLemmas));
+        return data;
     }
 
-    private String highlightLemmas(String text, Set<String> queryLemmas) {
-        String[] words = text.split("(?=[.,!?;:]|\\s)");
-        return Arrays.stream(words).map(word -> {
-            String cleanWord = word.toLowerCase().replaceAll("[^а-яё]", "");
-            if (cleanWord.isEmpty()) {
-                return word;
-            }
-            return lemmasFinder.findLemmas(cleanWord).keySet().stream().anyMatch(queryLemmas::contains) ? "<b>" + word + "</b>" : word;
-        }).collect(Collectors.joining());
+    private record ResultWindow(long[] topPages, int from, int to, Map<Integer, PageRepository.PageMetadata> pages,
+                                Map<Integer, PageText> texts, Set<Integer> missing) {
     }
 }
@@ -0,0 +1,93 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.index.InvertedIndex;
+import searchengine.model.Site;
+import searchengine.repositories.SiteRepository;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Поколения индекса: полная переиндексация пишет в неактивные записи site и затем переключает их.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SiteGenerations {
+    private static final int DELETE_CHUNK = 1000;
+
+    private final SiteRepository siteRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final InvertedIndex invertedIndex;
+    private final LemmaDictionary lemmaDictionary;
+
+    /**
+     * Делает активными указанные сайты вместо текущих и удаляет данные прежнего поколения.
+     */
+    public void swap(Collection<Site> sites) {
+        List<Integer> siteIds = sites.stream().map(Site::getId).collect(Collectors.toList());
+        List<Site> previous = transactionTemplate.execute(status -> {
+            List<Site> active = siteRepository.findByActiveTrue();
+            siteRepository.deactivateAll();
+            siteRepository.activate(siteIds);
+            return active;
+        });
+        log.info("Поисковый индекс переключён на новое поколение сайтов {}", siteIds);
+        if (previous != null) {
+            previous.stream().filter(site -> !siteIds.contains(site.getId())).forEach(this::drop);
+        }
+    }
+
+    /**
+     * Если активного поколения нет (первая индексация), делает активным недостроенное,
+     * чтобы по уже обработанным страницам можно было искать.
+     */
+    public void activateIfNoneActive() {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (siteRepository.findByActiveTrue().isEmpty()) {
+                List<Integer> siteIds = siteRepository.findByActiveFalse().stream().map(Site::getId).collect(Collectors.toList());
+                if (!siteIds.isEmpty()) {
+                    siteRepository.activate(siteIds);
+                }
+            }
+        });
+    }
+
+    /**
+     * Удаляет неактивные сайты, оставшиеся от прерванной переиндексации.
+     */
+    public void dropInactive() {
+        siteRepository.findByActiveFalse().forEach(this::drop);
+    }
+
+    private void drop(Site site) {
+        int siteId = site.getId();
+        invertedIndex.removeSite(siteId);
+        lemmaDictionary.forgetSite(siteId);
+
+        List<Integer> pageIds = jdbcTemplate.queryForList("SELECT id FROM page WHERE site_id = ?", Integer.class, siteId);
+        for (int from = 0; from < pageIds.size(); from += DELETE_CHUNK) {
+            List<Integer> chunk = pageIds.subList(from, Math.min(pageIds.size(), from + DELETE_CHUNK));
+            String ids = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            Object[] args = chunk.toArray();
+            jdbcTemplate.update("DELETE FROM `index` WHERE page_id IN (" + ids + ")", args);
+            jdbcTemplate.update("DELETE FROM page_text WHERE page_id IN (" + ids + ")", args);
+            jdbcTemplate.update("DELETE FROM page_content WHERE page_id IN (" + ids + ")", args);
+            jdbcTemplate.update("DELETE FROM page WHERE id IN (" + ids + ")", args);
+        }
+        int deletedLemmas;
+        do {
+            deletedLemmas = jdbcTemplate.update("DELETE FROM lemma WHERE site_id = ? LIMIT " + DELETE_CHUNK, siteId);
+        } while (deletedLemmas == DELETE_CHUNK);
+        siteRepository.deleteById(siteId);
+        log.info("Удалены данные прежнего поколения сайта {} ({} страниц)", site.getUrl(), pageIds.size());
+    }
+}
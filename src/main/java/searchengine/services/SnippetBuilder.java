@@ -0,0 +1,213 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.index.TokenPositions;
+import searchengine.model.PageText;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Строит сниппет по сохранённым позициям лемм.
+ */
+@Component
+@RequiredArgsConstructor
+public class SnippetBuilder {
+    static final int MAX_SNIPPET_LENGTH = 300;
+    private static final int MIN_FRAGMENT_LENGTH = 60;
+
+    private final LemmasFinder lemmasFinder;
+
+    /**
+     * @param termsByLemmaId id лемм запроса на сайте страницы -> порядковый номер леммы в запросе;
+     *                       номера меньше queryLemmas.size(), но на сайте могут быть не все леммы запроса
+     */
+    public String build(PageText pageText, Map<Integer, Integer> termsByLemmaId, Set<String> queryLemmas) {
+        if (pageText.getPositions() == null) {
+            return buildByMorphology(pageText.getText(), queryLemmas);
+        }
+        TokenPositions.Hits hits = TokenPositions.findHits(pageText.getPositions(), termsByLemmaId);
+        return buildFromHits(pageText.getText(), hits, queryLemmas.size());
+    }
+
+    String buildFromHits(String text, TokenPositions.Hits hits, int termCount) {
+        if (hits.size() == 0) {
+            return "";
+        }
+        boolean[] covered = new boolean[termCount];
+        List<int[]> fragments = new ArrayList<>();
+        int[] densest = densestWindow(hits, termCount);
+        int budget = MAX_SNIPPET_LENGTH - addFragment(text, hits, densest[0], densest[1], MAX_SNIPPET_LENGTH, fragments, covered);
+
+        // Леммы, не попавшие в основное окно, добавляются отдельными фрагментами, пока хватает места.
+        for (int i = 0; i < hits.size() && budget >= MIN_FRAGMENT_LENGTH; i++) {
+            if (!covered[hits.terms()[i]] && !isInsideFragments(hits.starts()[i], fragments)) {
+                budget -= addFragment(text, hits, i, i, budget, fragments, covered);
+            }
+        }
+        fragments.sort(Comparator.comparingInt(fragment -> fragment[0]));
+
+        StringBuilder snippet = new StringBuilder();
+        int hit = 0;
+        for (int[] fragment : fragments) {
+            int position = fragment[0];
+            while (hit < hits.size() && hits.starts()[hit] < fragment[0]) {
+                hit++;
+            }
+            for (; hit < hits.size() && hits.ends()[hit] <= fragment[1]; hit++) {
+                snippet.append(text, position, hits.starts()[hit])
+                        .append("<b>").append(text, hits.starts()[hit], hits.ends()[hit]).append("</b>");
+                position = hits.ends()[hit];
+            }
+            snippet.append(text, position, fragment[1]).append("... ");
+        }
+        return snippet.toString();
+    }
+
+    /**
+     * Окно не длиннее MAX_SNIPPET_LENGTH с наибольшим числом разных лемм запроса,
+     * при равенстве - с наибольшим числом вхождений. Возвращает номера первого и последнего вхождения.
+     */
+    private static int[] densestWindow(TokenPositions.Hits hits, int termCount) {
+        int[] counts = new int[termCount];
+        int distinct = 0;
+        int left = 0;
+        int[] best = {0, 0};
+        int bestDistinct = 0;
+        int bestHits = 0;
+        for (int right = 0; right < hits.size(); right++) {
+            if (counts[hits.terms()[right]]++ == 0) {
+                distinct++;
+            }
+            while (left < right && hits.ends()[right] - hits.starts()[left] > MAX_SNIPPET_LENGTH) {
+                if (--counts[hits.terms()[left]] == 0) {
+                    distinct--;
+                }
+                left++;
+            }
+            int windowHits = right - left + 1;
+            if (distinct > bestDistinct || (distinct == bestDistinct && windowHits > bestHits)) {
+                bestDistinct = distinct;
+                bestHits = windowHits;
+                best[0] = left;
+                best[1] = right;
+            }
+        }
+        return best;
+    }
+
+    private static int addFragment(String text, TokenPositions.Hits hits, int firstHit, int lastHit, int length,
+                                   List<int[]> fragments, boolean[] covered) {
+        int hitsStart = hits.starts()[firstHit];
+        int hitsEnd = hits.ends()[lastHit];
+        int padding = Math.max(0, length - (hitsEnd - hitsStart)) / 2;
+        int start = Math.max(0, hitsStart - padding);
+        int end = Math.min(text.length(), hitsEnd + padding);
+        for (int[] fragment : fragments) {
+            if (start < fragment[1] && end > fragment[0]) {
+                if (hitsStart >= fragment[1]) {
+                    start = fragment[1];
+                } else {
+                    end = fragment[0];
+                }
+            }
+        }
+        start = wordStart(text, start, hitsStart);
+        end = wordEnd(text, end, hitsEnd);
+        if (start >= end) {
+            return 0;
+        }
+        fragments.add(new int[]{start, end});
+        for (int i = 0; i < hits.size(); i++) {
+            if (hits.starts()[i] >= start && hits.ends()[i] <= end) {
+                covered[hits.terms()[i]] = true;
+            }
+        }
+        return end - start;
+    }
+
+    private static int wordStart(String text, int position, int limit) {
+        if (position == 0 || Character.isWhitespace(text.charAt(position - 1))) {
+            return position;
+        }
+        while (position < limit && !Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+        while (position < limit && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int wordEnd(String text, int position, int limit) {
+        if (position == text.length() || Character.isWhitespace(text.charAt(position))) {
+            return position;
+        }
+        while (position > limit && !Character.isWhitespace(text.charAt(position - 1))) {
+            position--;
+        }
+        while (position > limit && Character.isWhitespace(text.charAt(position - 1))) {
+            position--;
+        }
+        return position;
+    }
+
+    private static boolean isInsideFragments(int position, List<int[]> fragments) {
+        for (int[] fragment : fragments) {
+            if (position >= fragment[0] && position < fragment[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Прежний способ для страниц без сохранённых позиций: лемматизация каждого слова текста.
+     */
+    private String buildByMorphology(String pageText, Set<String> queryLemmas) {
+        List<String> textWords = Arrays.asList(pageText.toLowerCase().split("\\s+"));
+        Set<Integer> lemmaPositions = new HashSet<>();
+
+        for (int i = 0; i < textWords.size(); i++) {
+            String word = textWords.get(i).replaceAll("[^a-zа-яё]", "");
+            if (word.isEmpty()) {
+                continue;
+            }
+            Set<String> wordLemmas = lemmasFinder.findLemmas(word).keySet();
+            if (wordLemmas.stream().anyMatch(queryLemmas::contains)) {
+                lemmaPositions.add(i);
+            }
+        }
+
+        StringBuilder snippet = new StringBuilder();
+        List<Integer> sortedPositions = new ArrayList<>(lemmaPositions);
+        Collections.sort(sortedPositions);
+
+        int i = 0;
+        while (i < sortedPositions.size() && snippet.length() < MAX_SNIPPET_LENGTH) {
+            int position = sortedPositions.get(i);
+            int start = Math.max(0, position - 5);
+            int end = Math.min(textWords.size(), position + 5);
+
+            String fragment = String.join(" ", textWords.subList(start, end))
+                    .replaceAll("\\s+", " ").trim();
+
+            snippet.append(fragment).append("... ");
+            i++;
+        }
+
+        return highlightLemmas(snippet.toString(), queryLemmas);
+    }
+
+    private String highlightLemmas(String text, Set<String> queryLemmas) {
+        String[] words = text.split("(?=[.,!?;:]|\\s)");
+        return Arrays.stream(words).map(word -> {
+            String cleanWord = word.toLowerCase().replaceAll("[^a-zа-яё]", "");
+            if (cleanWord.isEmpty()) {
+                return word;
+            }
+            return lemmasFinder.findLemmas(cleanWord).keySet().stream().anyMatch(queryLemmas::contains) ? "<b>" + word + "</b>" : word;
+        }).collect(Collectors.joining());
+    }
+}
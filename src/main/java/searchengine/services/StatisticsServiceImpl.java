@@ -7,54 +7,43 @@ import searchengine.dto.statistics.StatisticsData;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.dto.statistics.TotalStatistics;
 import searchengine.model.Site;
-import searchengine.repositories.LemmaRepository;
-import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
 
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class StatisticsServiceImpl implements StatisticsService {
 
     private final SiteRepository siteRepository;
-    private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
     private final IndexingService indexingService;
+    private final IndexingProgress indexingProgress;
+    private final LemmaDictionary lemmaDictionary;
 
+    /**
+     * Во время обхода статистика собирается из счётчиков {@link IndexingProgress} без запросов к БД,
+     * в остальное время — из чисел страниц и лемм, сохранённых в site по окончании обхода.
+     */
     @Override
     public StatisticsResponse getStatistics() {
-        List<Site> sites = siteRepository.findAll();
-        List<DetailedStatisticsItem> detailed = new ArrayList<>();
-
-        long totalPages = 0;
-        long totalLemmas = 0;
-
-        for (Site site : sites) {
-            DetailedStatisticsItem item = new DetailedStatisticsItem();
-            int pages = pageRepository.countBySiteId(site.getId());
-            long lemmas = lemmaRepository.countBySite_Id(site.getId());
-
-            item.setUrl(site.getUrl());
-            item.setName(site.getName());
-            item.setStatus(site.getStatus().toString());
-            item.setStatusTime(site.getStatusTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
-            item.setError(site.getLastError());
-            item.setPages(pages);
-            item.setLemmas((int) lemmas);
-
-            detailed.add(item);
-            totalPages += pages;
-            totalLemmas += lemmas;
-        }
+        boolean indexing = indexingService.isIndexing();
+        List<IndexingProgress.SiteProgress> progress = indexing ? indexingProgress.sites() : List.of();
+        List<DetailedStatisticsItem> detailed = progress.isEmpty()
+                ? displayedSites(indexing).stream().map(this::storedItem).collect(Collectors.toList())
+                : progress.stream().map(this::liveItem).collect(Collectors.toList());
 
         TotalStatistics total = new TotalStatistics();
-        total.setSites(sites.size());
-        total.setPages(totalPages);
-        total.setLemmas(totalLemmas);
-        total.setIndexing(indexingService.isIndexing());
+        total.setSites(detailed.size());
+        total.setPages(detailed.stream().mapToLong(DetailedStatisticsItem::getPages).sum());
+        total.setLemmas(detailed.stream().mapToLong(DetailedStatisticsItem::getLemmas).sum());
+        total.setIndexing(indexing);
 
         StatisticsData data = new StatisticsData();
         data.setTotal(total);
@@ -66,4 +55,52 @@ public class StatisticsServiceImpl implements StatisticsService {
 
         return response;
     }
+
+    private DetailedStatisticsItem storedItem(Site site) {
+        DetailedStatisticsItem item = siteItem(site);
+        item.setStatusTime(site.getStatusTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        item.setPages(Objects.requireNonNullElse(site.getPageCount(), 0));
+        item.setLemmas(Objects.requireNonNullElse(site.getLemmaCount(), 0));
+        return item;
+    }
+
+    private DetailedStatisticsItem liveItem(IndexingProgress.SiteProgress progress) {
+        Site site = progress.site();
+        DetailedStatisticsItem item = siteItem(site);
+        // Снимок site сделан при запуске обхода, статус и ошибка меняются по ходу.
+        item.setStatus(progress.status().toString());
+        item.setError(progress.lastError());
+        item.setStatusTime(progress.updatedAt());
+        item.setPages((int) progress.pages());
+        Integer lemmas = lemmaDictionary.size(site.getId());
+        item.setLemmas(lemmas != null ? lemmas : Objects.requireNonNullElse(site.getLemmaCount(), 0));
+        item.setFetched(progress.fetchedPages());
+        item.setQueued(progress.queuedPages());
+        item.setFailed(progress.failedPages());
+        item.setPagesPerSecond(progress.pagesPerSecond());
+        item.setEta(progress.etaSeconds());
+        return item;
+    }
+
+    private static DetailedStatisticsItem siteItem(Site site) {
+        DetailedStatisticsItem item = new DetailedStatisticsItem();
+        item.setUrl(site.getUrl());
+        item.setName(site.getName());
+        item.setStatus(site.getStatus().toString());
+        item.setError(site.getLastError());
+        return item;
+    }
+
+    /**
+     * Для каждого сайта берёт запись, по которой идёт поиск. Во время обхода - самую новую:
+     * при полной переиндексации это строящееся поколение.
+     */
+    private List<Site> displayedSites(boolean indexing) {
+        Map<String, Site> displayed = new LinkedHashMap<>();
+        siteRepository.findAll().stream()
+                .sorted(Comparator.comparingInt(Site::getId))
+                .forEach(site -> displayed.merge(site.getUrl(), site,
+                        (current, next) -> !indexing && current.isActive() && !next.isActive() ? current : next));
+        return new ArrayList<>(displayed.values());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package searchengine.services;
+
+/**
+ * Ограничитель частоты запросов к хосту: ведро на burst токенов,
+ * пополняемое со скоростью permitsPerSecond.
+ */
+public class TokenBucket {
+    private double permitsPerSecond;
+    private double permitsPerNano;
+    private double capacity;
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("Частота запросов должна быть положительной: " + permitsPerSecond);
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.permitsPerNano = permitsPerSecond / 1_000_000_000d;
+        this.capacity = Math.max(1, burst);
+        this.tokens = capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Снижает частоту и размер ведра до указанных, если они меньше текущих.
+     *
+     * @return true, если указанные значения отличаются от действовавших
+     */
+    public synchronized boolean limitTo(double permitsPerSecond, int burst) {
+        double limitedCapacity = Math.max(1, burst);
+        boolean differs = permitsPerSecond != this.permitsPerSecond || limitedCapacity != capacity;
+        if (permitsPerSecond > 0 && permitsPerSecond < this.permitsPerSecond) {
+            this.permitsPerSecond = permitsPerSecond;
+            this.permitsPerNano = permitsPerSecond / 1_000_000_000d;
+        }
+        capacity = Math.min(capacity, limitedCapacity);
+        tokens = Math.min(tokens, capacity);
+        return differs;
+    }
+
+    public synchronized double permitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public synchronized int burst() {
+        return (int) capacity;
+    }
+
+    /**
+     * Забирает токен, если он есть, и возвращает 0. Иначе ничего не забирает и
+     * возвращает, через сколько наносекунд токен появится.
+     */
+    public synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * permitsPerNano);
+        refilledAt = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / permitsPerNano));
+    }
+}
@@ -1,166 +1,177 @@
 package searchengine.services;
 
-import org.apache.tika.Tika;
 import org.apache.tika.exception.TikaException;
 import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
-import searchengine.model.SearchIndex;
-import searchengine.model.Lemma;
-import searchengine.model.Page;
 import searchengine.model.Site;
-import searchengine.repositories.IndexRepository;
-import searchengine.repositories.LemmaRepository;
 import searchengine.repositories.PageRepository;
-import searchengine.repositories.SiteRepository;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.RecursiveTask;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-
-public class WebCrawler extends RecursiveTask<Void> {
-    private final String url;
+import java.util.function.Consumer;
+
+/**
+ * Обработка страниц сайта: загрузка, разбор, лемматизация и передача на запись.
+ */
+public class WebCrawler {
     private final Site site;
-    private final SiteRepository siteRepository;
-    private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
-    private final AtomicBoolean isIndexing;
     private final LemmasFinder lemmasFinder;
-    private final Set<String> visitedUrls;
-
-    private static final Tika TIKA_INSTANCE = new Tika();
-
-    public WebCrawler(String url, Site site, SiteRepository siteRepository, PageRepository pageRepository, LemmaRepository lemmaRepository, IndexRepository indexRepository, AtomicBoolean isIndexing, LemmasFinder lemmasFinder) {
-        this.url = url;
+    private final PageWriter pageWriter;
+    private final KnownPages knownPages;
+    private final CrawlPipeline pipeline;
+    private final int maxBinaryTextChars;
+    private final CrawlMetrics metrics;
+    private final IndexingProgress.SiteProgress progress;
+
+    public WebCrawler(Site site, LemmasFinder lemmasFinder, PageWriter pageWriter, KnownPages knownPages, CrawlPipeline pipeline,
+                      int maxBinaryTextChars, CrawlMetrics metrics, IndexingProgress.SiteProgress progress) {
         this.site = site;
-        this.siteRepository = siteRepository;
-        this.pageRepository = pageRepository;
-        this.lemmaRepository = lemmaRepository;
-        this.indexRepository = indexRepository;
-        this.isIndexing = isIndexing;
         this.lemmasFinder = lemmasFinder;
-        this.visitedUrls = ConcurrentHashMap.newKeySet();
+        this.pageWriter = pageWriter;
+        this.knownPages = knownPages;
+        this.pipeline = pipeline;
+        this.maxBinaryTextChars = maxBinaryTextChars;
+        this.metrics = metrics;
+        this.progress = progress;
     }
 
-    private WebCrawler(String url, Site site, SiteRepository siteRepository, PageRepository pageRepository, LemmaRepository lemmaRepository, IndexRepository indexRepository, AtomicBoolean isIndexing, LemmasFinder lemmasFinder, Set<String> visitedUrls) {
-        this.url = url;
-        this.site = site;
-        this.siteRepository = siteRepository;
-        this.pageRepository = pageRepository;
-        this.lemmaRepository = lemmaRepository;
-        this.indexRepository = indexRepository;
-        this.isIndexing = isIndexing;
-        this.lemmasFinder = lemmasFinder;
-        this.visitedUrls = visitedUrls;
-    }
-
-    @Override
-    protected Void compute() {
-        if (!isIndexing.get() || !visitedUrls.add(url)) {
-            return null;
+    /**
+     * Загружает страницу и передаёт её на разбор. onLinks вызывается ровно один раз, возможно
+     * из другого потока, со ссылками на страницы того же сайта, которые нужно обойти.
+     * Если метод завершился исключением, onLinks не вызывается.
+     */
+    public void crawl(String url, Consumer<List<String>> onLinks) throws InterruptedException {
+        PageRepository.KnownPage knownPage = knownPages.visit(getPath(url));
+        Connection.Response response;
+        long fetchStartedAt = System.nanoTime();
+        progress.fetched();
+        try {
+            response = fetch(url, knownPage);
+            metrics.recordFetch(site.getUrl(), response.statusCode(), response.bodyAsBytes().length,
+                    System.nanoTime() - fetchStartedAt);
+        } catch (IOException e) {
+            if (e instanceof HttpStatusException statusException) {
+                metrics.recordFetch(site.getUrl(), statusException.getStatusCode(), 0, System.nanoTime() - fetchStartedAt);
+            } else {
+                metrics.recordFetchError(site.getUrl(), System.nanoTime() - fetchStartedAt);
+            }
+            savePageWithStatus(url, 500, errorMessage(e), knownPage);
+            onLinks.accept(Collections.emptyList());
+            return;
         }
 
-        try {
-            Thread.sleep(250);
-            handlePage();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return null;
-        } catch (IOException | TikaException e) {
-            savePageWithStatus(500, "Ошибка обработки страницы: " + e.getClass().getName() + " - " + e.getMessage());
+        int statusCode = response.statusCode();
+        if (statusCode == 304 && knownPage != null) {
+            // Страница не изменилась: ссылки для дальнейшего обхода берём из сохранённой копии.
+            pipeline.extract(() -> {
+                String storedContent = knownPages.loadContent(knownPage);
+                return storedContent != null ? findLinks(Jsoup.parse(storedContent, url)) : Collections.emptyList();
+            }, onLinks);
+            return;
+        }
+        if (statusCode != 200) {
+            savePageWithStatus(url, statusCode, response.statusMessage(), knownPage);
+            onLinks.accept(Collections.emptyList());
+            return;
         }
-        return null;
+        pipeline.extract(() -> extract(url, response, knownPage), onLinks);
     }
 
-    private void handlePage() throws IOException, TikaException {
-        Connection.Response response = Jsoup.connect(url)
+    private Connection.Response fetch(String url, PageRepository.KnownPage knownPage) throws IOException {
+        Connection connection = Jsoup.connect(url)
                 .userAgent("HeliontSearchBot")
                 .referrer("http://www.google.com")
                 .timeout(30000)
-                .ignoreContentType(true)
-                .execute();
-
-        int statusCode = response.statusCode();
-        if (statusCode != 200) {
-            savePageWithStatus(statusCode, response.statusMessage());
-            return;
+                .ignoreContentType(true);
+        if (knownPage != null && knownPage.getCode() == 200) {
+            if (knownPage.getEtag() != null) {
+                connection.header("If-None-Match", knownPage.getEtag());
+            }
+            if (knownPage.getLastModified() != null) {
+                connection.header("If-Modified-Since", knownPage.getLastModified());
+            }
         }
+        // Тело читается здесь же, чтобы стадия разбора не держала соединение.
+        return connection.execute().bufferUp();
+    }
 
-        String textContent = TIKA_INSTANCE.parseToString(new ByteArrayInputStream(response.bodyAsBytes()));
-
-        Document doc = (response.contentType() != null && Objects.requireNonNull(response.contentType()).toLowerCase().contains("text/html"))
-                ? response.parse()
-                : null;
-
-        String pageContentToSave = (doc != null) ? doc.html() : textContent;
-        Page page = savePageWithStatus(statusCode, pageContentToSave);
-
-        processPageContent(page, textContent);
+    /**
+     * Стадия разбора: извлекает текст и ссылки и передаёт текст на лемматизацию.
+     */
+    private List<String> extract(String url, Connection.Response response, PageRepository.KnownPage knownPage)
+            throws InterruptedException {
+        long startedAt = System.nanoTime();
+        try {
+            PageVersion version = PageVersion.of(response);
+            boolean unchanged = knownPage != null && knownPage.getCode() == 200
+                    && version.contentHash().equals(knownPage.getContentHash());
+            if (unchanged) {
+                if (!Objects.equals(version.etag(), knownPage.getEtag())
+                        || !Objects.equals(version.lastModified(), knownPage.getLastModified())) {
+                    // Тело то же, но сервер выдал новые валидаторы: без них следующий обход не получит 304.
+                    pageWriter.updateValidators(knownPage.getId(), version);
+                }
+                return isHtml(response) ? findLinks(response.parse()) : Collections.emptyList();
+            }
 
-        if (doc != null) {
-            createSubTasks(doc);
+            PageTextExtractor.Extracted extracted = PageTextExtractor.extract(response, maxBinaryTextChars);
+            pipeline.lemmatize(() -> {
+                long lemmatizeStartedAt = System.nanoTime();
+                PageTokens tokens = PageTokens.of(lemmasFinder, extracted.text());
+                metrics.recordLemmatize(site.getUrl(), System.nanoTime() - lemmatizeStartedAt);
+                ParsedPage parsedPage = ParsedPage.indexed(site, getPath(url), extracted.content(),
+                        extracted.title(), extracted.text(), tokens, version);
+                submit(parsedPage, knownPage);
+            });
+
+            return extracted.document() != null ? findLinks(extracted.document()) : Collections.emptyList();
+        } catch (IOException | TikaException e) {
+            savePageWithStatus(url, 500, errorMessage(e), knownPage);
+            return Collections.emptyList();
+        } finally {
+            metrics.recordExtract(site.getUrl(), System.nanoTime() - startedAt);
         }
     }
 
-    private void processPageContent(Page page, String textContent) {
-        if (textContent.isBlank()) {
-            return;
-        }
-        Map<String, Integer> pageLemmasMap = lemmasFinder.findLemmas(textContent);
-        if (pageLemmasMap.isEmpty()) {
-            return;
-        }
-
-        Collection<String> lemmaNames = pageLemmasMap.keySet();
-        List<Lemma> existingLemmas = lemmaRepository.findAllBySiteAndLemmaIn(site, lemmaNames);
-        Map<String, Lemma> dbLemmasMap = existingLemmas.stream().collect(Collectors.toMap(Lemma::getLemma, Function.identity()));
-
-        List<Lemma> lemmasToSave = new ArrayList<>();
-        for (String lemmaName : lemmaNames) {
-            Lemma lemma = dbLemmasMap.computeIfAbsent(lemmaName, l -> new Lemma(l, site));
-            lemma.setFrequency(lemma.getFrequency() + 1);
-            lemmasToSave.add(lemma);
-        }
-        lemmaRepository.saveAll(lemmasToSave);
+    private static String errorMessage(Exception e) {
+        return "Ошибка обработки страницы: " + e.getClass().getName() + " - " + e.getMessage();
+    }
 
-        List<SearchIndex> indicesToSave = new ArrayList<>();
-        for (Lemma lemma : lemmasToSave) {
-            indicesToSave.add(new SearchIndex(page, lemma, pageLemmasMap.get(lemma.getLemma()).floatValue()));
-        }
-        indexRepository.saveAll(indicesToSave);
+    private static boolean isHtml(Connection.Response response) {
+        return response.contentType() != null && Objects.requireNonNull(response.contentType()).toLowerCase().contains("text/html");
     }
 
-    private void createSubTasks(Document doc) {
-        List<WebCrawler> subTasks = new ArrayList<>();
-        Elements links = doc.select("a[href]");
-        for (Element link : links) {
+    private List<String> findLinks(Document doc) {
+        List<String> links = new ArrayList<>();
+        for (Element link : doc.select("a[href]")) {
             String absUrl = link.attr("abs:href");
             if (isValidUrl(absUrl)) {
-                WebCrawler task = new WebCrawler(absUrl, site, siteRepository, pageRepository, lemmaRepository, indexRepository, isIndexing, this.lemmasFinder, this.visitedUrls);
-                subTasks.add(task);
-                task.fork();
+                links.add(absUrl);
             }
         }
-        for (WebCrawler task : subTasks) {
-            task.join();
+        return links;
+    }
+
+    private void savePageWithStatus(String url, int statusCode, String content, PageRepository.KnownPage knownPage)
+            throws InterruptedException {
+        ParsedPage parsedPage = ParsedPage.withStatus(site, getPath(url), statusCode, content);
+        progress.failed();
+        submit(parsedPage, knownPage);
+    }
+
+    private void submit(ParsedPage parsedPage, PageRepository.KnownPage knownPage) throws InterruptedException {
+        if (knownPage != null) {
+            pageWriter.submit(parsedPage.replacing(knownPage.getId()));
+        } else {
+            progress.pageAdded();
+            pageWriter.submit(parsedPage);
         }
     }
 
-    private Page savePageWithStatus(int statusCode, String content) {
-        Page page = new Page();
-        page.setSite(site);
-        page.setPath(url.replace(site.getUrl(), ""));
-        page.setCode(statusCode);
-        page.setContent(content);
-        pageRepository.saveAndFlush(page);
-        return page;
+    private String getPath(String url) {
+        return url.replace(site.getUrl(), "");
     }
 
     private boolean isValidUrl(String url) {
@@ -168,4 +179,4 @@ public class WebCrawler extends RecursiveTask<Void> {
                !url.contains("#") &&
                !url.matches("(?i).*\\.(pdf|jpe?g|png|gif|zip|rar|exe|mp3|mp4|xml|doc|docx|xls|xlsx)$");
     }
-}
\ No newline at end of file
+}
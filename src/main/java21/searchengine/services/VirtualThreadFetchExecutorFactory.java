@@ -0,0 +1,20 @@
+package searchengine.services;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Загрузка в виртуальном потоке на каждую страницу. Собирается только профилем java21.
+ */
+@Component
+@ConditionalOnProperty(name = "indexing-settings.crawler.fetch-mode", havingValue = "virtual")
+public class VirtualThreadFetchExecutorFactory implements FetchExecutorFactory {
+
+    @Override
+    public ExecutorService create() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("crawl-fetcher-", 0).factory());
+    }
+}
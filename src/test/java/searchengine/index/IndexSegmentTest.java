@@ -0,0 +1,87 @@
+package searchengine.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexSegmentTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackLemmasAndPostingsOfAllSites() throws IOException {
+        Map<Integer, TreeMap<Integer, Float>> expected = new HashMap<>();
+        List<IndexSegment.Entry> entries = new ArrayList<>();
+        String[] lemmas = {"поиск", "индекс", "search", "ёлка", "я", "a"};
+        Random random = new Random(1);
+        int lemmaId = 100;
+        for (int siteId = 2; siteId >= 1; siteId--) {
+            for (String lemma : lemmas) {
+                TreeMap<Integer, Float> pages = new TreeMap<>();
+                int size = 1 + random.nextInt(Postings.BLOCK_SIZE * 3);
+                while (pages.size() < size) {
+                    pages.put(1 + random.nextInt(100_000), (float) (1 + random.nextInt(20)));
+                }
+                Postings postings = new Postings();
+                pages.forEach(postings::add);
+                entries.add(new IndexSegment.Entry(siteId, lemma, lemmaId, postings.snapshot()));
+                expected.put(lemmaId, pages);
+                lemmaId--;
+            }
+        }
+        Path file = directory.resolve("test.seg");
+
+        IndexSegment.write(file, entries);
+        IndexSegment segment = IndexSegment.open(file);
+
+        assertEquals(entries.size(), segment.lemmaCount());
+        for (IndexSegment.Entry entry : entries) {
+            assertEquals((Integer) entry.lemmaId(), segment.findLemmaId(entry.siteId(), entry.lemma()));
+            TreeMap<Integer, Float> pages = expected.get(entry.lemmaId());
+            Postings.Snapshot postings = segment.postings(entry.lemmaId());
+            assertEquals(pages.size(), postings.size());
+            int[] pageIds = new int[postings.size()];
+            float[] ranks = new float[postings.size()];
+            postings.decode(pageIds, ranks);
+            assertArrayEquals(pages.keySet().stream().mapToInt(Integer::intValue).toArray(), pageIds);
+
+            Postings.Cursor cursor = postings.cursor();
+            for (Map.Entry<Integer, Float> page : pages.entrySet()) {
+                assertEquals((int) page.getKey(), cursor.advance(page.getKey()));
+                assertEquals((float) page.getValue(), cursor.rank());
+            }
+            assertEquals(Postings.NO_MORE_PAGES, cursor.advance(pages.lastKey() + 1));
+        }
+        assertNull(segment.findLemmaId(1, "нет"));
+        assertNull(segment.findLemmaId(3, "поиск"));
+        assertNull(segment.postings(1));
+    }
+
+    @Test
+    void listsEveryLemma() throws IOException {
+        Postings postings = new Postings();
+        postings.add(1, 1);
+        Path file = directory.resolve("test.seg");
+        IndexSegment.write(file, List.of(new IndexSegment.Entry(1, "б", 2, postings.snapshot()),
+                new IndexSegment.Entry(1, "а", 1, postings.snapshot())));
+
+        List<String> visited = new ArrayList<>();
+        IndexSegment.open(file).forEachLemma((siteId, lemma, lemmaId) -> visited.add(siteId + ":" + lemma + ":" + lemmaId));
+
+        assertEquals(List.of("1:а:1", "1:б:2"), visited);
+    }
+
+    @Test
+    void rejectsDamagedFile() throws IOException {
+        Path file = directory.resolve("broken.seg");
+        Files.write(file, new byte[64]);
+
+        assertThrows(IOException.class, () -> IndexSegment.open(file));
+    }
+}
@@ -0,0 +1,205 @@
+package searchengine.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import searchengine.config.SearchSettings;
+import searchengine.repositories.IndexRepository;
+import searchengine.repositories.LemmaRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class InvertedIndexTest {
+    private static final String[] LEMMAS = {"поиск", "индекс", "страница", "сайт", "запрос"};
+
+    @TempDir
+    Path directory;
+
+    private final Random random = new Random(1);
+    // сайт -> лемма -> страница -> ранг
+    private final Map<Integer, Map<String, Map<Integer, Integer>>> expected = new HashMap<>();
+    private SearchSettings settings;
+    private InvertedIndex index;
+
+    @BeforeEach
+    void setUp() {
+        settings = new SearchSettings();
+        settings.setSegmentDirectory(directory.toString());
+        index = new InvertedIndex(mock(LemmaRepository.class), mock(IndexRepository.class), settings);
+        index.load();
+    }
+
+    @Test
+    void findsPagesContainingAllLemmasBeforeAndAfterCompaction() {
+        int pageId = 0;
+        for (int siteId = 1; siteId <= 2; siteId++) {
+            for (int page = 0; page < 500; page++) {
+                addPage(siteId, ++pageId);
+            }
+        }
+        assertMatchesExpected();
+
+        index.compact();
+        assertTrue(Files.exists(directory.resolve("CURRENT")), "сегмент не записан");
+        assertMatchesExpected();
+
+        // Изменения после сегмента лежат в куче поверх него.
+        for (int i = 0; i < 50; i++) {
+            addPage(1, ++pageId);
+        }
+        for (int removed = 1; removed <= 400; removed += 7) {
+            removePage(1, removed);
+        }
+        assertMatchesExpected();
+
+        index.compact();
+        assertMatchesExpected();
+    }
+
+    @Test
+    void forgetsRemovedSite() {
+        for (int pageId = 1; pageId <= 200; pageId++) {
+            addPage(pageId % 2 + 1, pageId);
+        }
+        index.compact();
+
+        index.removeSite(1);
+        expected.remove(1);
+
+        assertMatchesExpected();
+        assertNull(index.findLemmaId(1, LEMMAS[0]));
+    }
+
+    @Test
+    void findsLemmaReaddedUnderNewIdAfterPurge() {
+        index.addPage(1, 1, Map.of("поиск", 101), Map.of("поиск", 1));
+        index.compact();
+        index.addPage(1, 2, Map.of("поиск", 101), Map.of("поиск", 2));
+        index.removePage(1, 1, Map.of("поиск", 101));
+        index.removePage(1, 2, Map.of("поиск", 101));
+
+        // Строка леммы удалена очисткой, следующая страница получает лемму с новым id.
+        index.addPage(1, 3, Map.of("поиск", 102), Map.of("поиск", 3));
+
+        assertEquals((Integer) 102, index.findLemmaId(1, "поиск"));
+        assertArrayEquals(new int[]{3}, pageIds(index.findPages(List.of(1), List.of("поиск"))));
+
+        index.compact();
+        InvertedIndex reopened = new InvertedIndex(mock(LemmaRepository.class), mock(IndexRepository.class), settings);
+        assertTrue(reopened.openSegment());
+        assertEquals((Integer) 102, reopened.findLemmaId(1, "поиск"));
+        assertArrayEquals(new int[]{3}, pageIds(reopened.findPages(List.of(1), List.of("поиск"))));
+    }
+
+    @Test
+    void rewritesSegmentAfterSinglePageChange() throws InterruptedException {
+        settings.setSegmentCompactionDelayMs(10);
+        addPage(1, 1);
+        index.compact();
+
+        index.beginChanges();
+        assertFalse(Files.exists(directory.resolve("CURRENT")));
+        addPage(1, 2);
+        index.endChanges(false);
+        index.scheduleCompaction();
+
+        for (int i = 0; i < 500 && !Files.exists(directory.resolve("CURRENT")); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(Files.exists(directory.resolve("CURRENT")), "сегмент не записан");
+        assertMatchesExpected();
+    }
+
+    @Test
+    void writesPendingSegmentOnShutdown() {
+        settings.setSegmentCompactionDelayMs(3_600_000);
+        index.beginChanges();
+        addPage(1, 1);
+        index.endChanges(false);
+        index.scheduleCompaction();
+
+        index.shutdown();
+
+        assertTrue(Files.exists(directory.resolve("CURRENT")), "сегмент не записан");
+    }
+
+    @Test
+    void changesVersionOnlyForChangedSites() {
+        addPage(1, 1);
+        long site1 = index.version(List.of(1));
+        long site2 = index.version(List.of(2));
+
+        addPage(2, 2);
+
+        assertEquals(site1, index.version(List.of(1)));
+        assertNotEquals(site2, index.version(List.of(2)));
+    }
+
+    private static int[] pageIds(SearchHits hits) {
+        return Arrays.copyOf(hits.pageIds(), hits.size());
+    }
+
+    private void addPage(int siteId, int pageId) {
+        Map<String, Integer> lemmaIds = new HashMap<>();
+        Map<String, Integer> ranks = new HashMap<>();
+        for (int i = 0; i < LEMMAS.length; i++) {
+            // Частые и редкие леммы: i-я встречается примерно на каждой (i + 1)-й странице.
+            if (random.nextInt(i + 1) == 0) {
+                int rank = 1 + random.nextInt(10);
+                lemmaIds.put(LEMMAS[i], siteId * 100 + i);
+                ranks.put(LEMMAS[i], rank);
+                expected.computeIfAbsent(siteId, id -> new HashMap<>())
+                        .computeIfAbsent(LEMMAS[i], lemma -> new HashMap<>()).put(pageId, rank);
+            }
+        }
+        index.addPage(siteId, pageId, lemmaIds, ranks);
+    }
+
+    private void removePage(int siteId, int pageId) {
+        Map<String, Integer> lemmaIds = new HashMap<>();
+        expected.get(siteId).forEach((lemma, pages) -> {
+            if (pages.remove(pageId) != null) {
+                lemmaIds.put(lemma, siteId * 100 + Arrays.asList(LEMMAS).indexOf(lemma));
+            }
+        });
+        index.removePage(siteId, pageId, lemmaIds);
+    }
+
+    private void assertMatchesExpected() {
+        List<List<String>> queries = List.of(List.of("запрос"), List.of("сайт", "поиск"), List.of("запрос", "страница", "индекс"),
+                List.of("поиск", "нет такой леммы"));
+        for (List<String> query : queries) {
+            Map<Integer, Float> expectedPages = new TreeMap<>();
+            for (Map<String, Map<Integer, Integer>> site : expected.values()) {
+                Map<Integer, Integer> first = site.getOrDefault(query.get(0), Map.of());
+                for (int pageId : first.keySet()) {
+                    float relevance = 0;
+                    boolean all = true;
+                    for (String lemma : query) {
+                        Integer rank = site.getOrDefault(lemma, Map.of()).get(pageId);
+                        if (rank == null) {
+                            all = false;
+                            break;
+                        }
+                        relevance += rank;
+                    }
+                    if (all) {
+                        expectedPages.put(pageId, relevance);
+                    }
+                }
+            }
+
+            SearchHits hits = index.findPages(List.of(1, 2), query);
+            Map<Integer, Float> actualPages = new TreeMap<>();
+            for (int i = 0; i < hits.size(); i++) {
+                assertNull(actualPages.put(hits.pageIds()[i], hits.relevance()[i]), "страница найдена дважды");
+            }
+            assertEquals(expectedPages, actualPages, query.toString());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package searchengine.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingsTest {
+    private static final int PAGES = Postings.BLOCK_SIZE * 8;
+
+    @Test
+    void keepsPagesSortedAcrossBlocksWhenAddedInAnyOrder() {
+        Random random = new Random(1);
+        Postings postings = new Postings();
+        TreeMap<Integer, Float> expected = new TreeMap<>();
+        for (int i = 0; i < PAGES; i++) {
+            int pageId = 1 + random.nextInt(PAGES * 10);
+            float rank = 1 + random.nextInt(300);
+            postings.add(pageId, rank);
+            expected.put(pageId, rank);
+        }
+
+        assertContents(expected, postings.snapshot());
+    }
+
+    @Test
+    void replacesRankOfExistingPage() {
+        Postings postings = new Postings();
+        postings.add(10, 1);
+        postings.add(20, 2);
+        postings.add(10, 5);
+
+        assertContents(new TreeMap<>(Map.of(10, 5f, 20, 2f)), postings.snapshot());
+    }
+
+    @Test
+    void removesPagesAndEmptyBlocks() {
+        Postings postings = new Postings();
+        TreeMap<Integer, Float> expected = new TreeMap<>();
+        for (int pageId = 1; pageId <= PAGES; pageId++) {
+            postings.add(pageId, pageId % 7 + 1);
+            expected.put(pageId, (float) (pageId % 7 + 1));
+        }
+        for (int pageId = 1; pageId <= PAGES; pageId += 3) {
+            assertTrue(postings.remove(pageId));
+            expected.remove(pageId);
+        }
+        assertFalse(postings.remove(1));
+        assertFalse(postings.remove(PAGES * 2));
+        assertContents(expected, postings.snapshot());
+
+        for (int pageId : new ArrayList<>(expected.keySet())) {
+            assertTrue(postings.remove(pageId));
+        }
+        assertEquals(0, postings.size());
+        assertEquals(Postings.NO_MORE_PAGES, postings.snapshot().cursor().advance(0));
+    }
+
+    @Test
+    void keepsOldSnapshotUnchangedAfterWrites() {
+        Postings postings = new Postings();
+        postings.add(1, 1);
+        postings.add(2, 2);
+        Postings.Snapshot before = postings.snapshot();
+
+        postings.add(3, 3);
+        postings.remove(1);
+
+        assertContents(new TreeMap<>(Map.of(1, 1f, 2, 2f)), before);
+        assertContents(new TreeMap<>(Map.of(2, 2f, 3, 3f)), postings.snapshot());
+    }
+
+    @Test
+    void buildsFromUnsortedPackedPairs() {
+        long[] packed = {Postings.pack(300, 3), Postings.pack(5, 1), Postings.pack(70_000, 200), Postings.pack(6, 2)};
+
+        Postings postings = Postings.fromPacked(packed, packed.length);
+
+        assertContents(new TreeMap<>(Map.of(5, 1f, 6, 2f, 300, 3f, 70_000, 200f)), postings.snapshot());
+    }
+
+    @Test
+    void cursorAdvancesToFirstPageNotLessThanTarget() {
+        Random random = new Random(2);
+        TreeMap<Integer, Float> expected = new TreeMap<>();
+        long[] packed = new long[PAGES];
+        for (int i = 0; i < PAGES; i++) {
+            int pageId = 1 + random.nextInt(1_000_000);
+            while (expected.containsKey(pageId)) {
+                pageId++;
+            }
+            expected.put(pageId, (float) (1 + random.nextInt(50)));
+            packed[i] = Postings.pack(pageId, expected.get(pageId));
+        }
+        Postings.Cursor cursor = Postings.fromPacked(packed, PAGES).snapshot().cursor();
+
+        int target = 0;
+        while (true) {
+            target += random.nextInt(random.nextBoolean() ? 50 : 20_000);
+            Integer ceiling = expected.ceilingKey(target);
+            int found = cursor.advance(target);
+            if (ceiling == null) {
+                assertEquals(Postings.NO_MORE_PAGES, found);
+                assertEquals(Postings.NO_MORE_PAGES, cursor.advance(target + 1));
+                break;
+            }
+            assertEquals((int) ceiling, found, "target " + target);
+            assertEquals((float) expected.get(ceiling), cursor.rank());
+        }
+    }
+
+    @Test
+    void intersectsShortListWithLongOneAndSumsRanks() {
+        Random random = new Random(3);
+        TreeMap<Integer, Float> longList = new TreeMap<>();
+        Postings postings = new Postings();
+        for (int pageId = 1; pageId <= PAGES * 4; pageId++) {
+            if (random.nextInt(3) > 0) {
+                float rank = 1 + random.nextInt(9);
+                longList.put(pageId, rank);
+                postings.add(pageId, rank);
+            }
+        }
+        int[] pageIds = random.ints(200, 1, PAGES * 5).distinct().sorted().toArray();
+        float[] relevance = new float[pageIds.length];
+        Arrays.fill(relevance, 0.5f);
+
+        List<Integer> expectedPages = new ArrayList<>();
+        List<Float> expectedRelevance = new ArrayList<>();
+        for (int pageId : pageIds) {
+            if (longList.containsKey(pageId)) {
+                expectedPages.add(pageId);
+                expectedRelevance.add(0.5f + longList.get(pageId));
+            }
+        }
+
+        int size = InvertedIndex.intersect(pageIds, relevance, pageIds.length, postings.snapshot().cursor());
+
+        assertEquals(expectedPages.size(), size);
+        for (int i = 0; i < size; i++) {
+            assertEquals((int) expectedPages.get(i), pageIds[i]);
+            assertEquals((float) expectedRelevance.get(i), relevance[i]);
+        }
+    }
+
+    @Test
+    void intersectionWithEmptyListIsEmpty() {
+        int[] pageIds = {1, 2, 3};
+        float[] relevance = {1, 1, 1};
+
+        assertEquals(0, InvertedIndex.intersect(pageIds, relevance, pageIds.length, new Postings().snapshot().cursor()));
+    }
+
+    private static void assertContents(TreeMap<Integer, Float> expected, Postings.Snapshot snapshot) {
+        assertEquals(expected.size(), snapshot.size());
+        int[] pageIds = new int[snapshot.size()];
+        float[] ranks = new float[snapshot.size()];
+        snapshot.decode(pageIds, ranks);
+        int i = 0;
+        for (Map.Entry<Integer, Float> entry : expected.entrySet()) {
+            assertEquals((int) entry.getKey(), pageIds[i]);
+            assertEquals((float) entry.getValue(), ranks[i]);
+            i++;
+        }
+    }
+}
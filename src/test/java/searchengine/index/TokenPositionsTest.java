@@ -0,0 +1,70 @@
+package searchengine.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenPositionsTest {
+
+    @Test
+    void findsHitsOfQueryLemmasOrderedByOffset() {
+        TokenPositions.Writer writer = new TokenPositions.Writer();
+        writer.addGroup(10, new int[]{0, 40, 100_000}, new int[]{5, 6, 7}, 3);
+        writer.addGroup(20, new int[]{10, 20}, new int[]{3, 4}, 2);
+        writer.addGroup(30, new int[]{30}, new int[]{8}, 1);
+
+        TokenPositions.Hits hits = TokenPositions.findHits(writer.toByteArray(), Map.of(10, 0, 30, 1));
+
+        assertEquals(4, hits.size());
+        assertArrayEquals(new int[]{0, 30, 40, 100_000}, hits.starts());
+        assertArrayEquals(new int[]{5, 38, 46, 100_007}, hits.ends());
+        assertArrayEquals(new int[]{0, 1, 0, 0}, hits.terms());
+    }
+
+    @Test
+    void findsNothingWithoutQueryLemmas() {
+        TokenPositions.Writer writer = new TokenPositions.Writer();
+        writer.addGroup(1, new int[]{0}, new int[]{4}, 1);
+
+        assertEquals(0, TokenPositions.findHits(writer.toByteArray(), Map.of(2, 0)).size());
+        assertEquals(0, TokenPositions.findHits(new TokenPositions.Writer().toByteArray(), Map.of(1, 0)).size());
+    }
+
+    @Test
+    void skipsLemmasWithTermsBeyondPackedRange() {
+        TokenPositions.Writer writer = new TokenPositions.Writer();
+        writer.addGroup(1, new int[]{0}, new int[]{4}, 1);
+        writer.addGroup(2, new int[]{10}, new int[]{4}, 1);
+
+        TokenPositions.Hits hits = TokenPositions.findHits(writer.toByteArray(),
+                Map.of(1, TokenPositions.MAX_TERM + 1, 2, TokenPositions.MAX_TERM));
+
+        assertEquals(1, hits.size());
+        assertEquals(10, hits.starts()[0]);
+        assertEquals(TokenPositions.MAX_TERM, hits.terms()[0]);
+    }
+
+    @Test
+    void stopsAtHitLimitWithoutMisreadingFollowingGroups() {
+        int count = TokenPositions.MAX_HITS + 100;
+        int[] starts = new int[count];
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            starts[i] = i * 2;
+            lengths[i] = 1;
+        }
+        TokenPositions.Writer writer = new TokenPositions.Writer();
+        writer.addGroup(1, starts, lengths, count);
+        writer.addGroup(2, new int[]{1}, new int[]{1}, 1);
+
+        TokenPositions.Hits hits = TokenPositions.findHits(writer.toByteArray(), Map.of(1, 0, 2, 1));
+
+        assertEquals(TokenPositions.MAX_HITS, hits.size());
+        for (int i = 1; i < hits.size(); i++) {
+            assertTrue(hits.starts()[i - 1] <= hits.starts()[i]);
+            assertEquals(hits.starts()[i] + 1, hits.ends()[i]);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package searchengine.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopPagesTest {
+
+    @Test
+    void selectsSameTopPagesAsFullSort() {
+        Random random = new Random(1);
+        int size = 5000;
+        int[] pageIds = new int[size];
+        float[] relevance = new float[size];
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+            pageIds[i] = i + 1;
+            relevance[i] = random.nextInt(100) + random.nextFloat();
+            sorted[i] = TopPages.key(relevance[i], pageIds[i]);
+        }
+        Arrays.sort(sorted);
+        SearchHits hits = new SearchHits(pageIds, relevance, size);
+
+        for (int k : new int[]{1, 10, 1000, size}) {
+            long[] expected = new long[k];
+            for (int i = 0; i < k; i++) {
+                expected[i] = sorted[size - 1 - i];
+            }
+            assertArrayEquals(expected, TopPages.select(hits, k));
+        }
+    }
+
+    @Test
+    void breaksRelevanceTiesByHigherPageId() {
+        SearchHits hits = new SearchHits(new int[]{3, 1, 2, 4}, new float[]{2, 2, 5, 1}, 4);
+
+        long[] top = TopPages.select(hits, 3);
+
+        assertArrayEquals(new int[]{2, 3, 1}, Arrays.stream(top).mapToInt(TopPages::pageId).toArray());
+        assertEquals(5f, TopPages.relevance(top[0]));
+    }
+
+    @Test
+    void returnsAllPagesWhenKExceedsHits() {
+        SearchHits hits = new SearchHits(new int[]{7, 8, 0}, new float[]{1, 3, 9}, 2);
+
+        long[] top = TopPages.select(hits, 10);
+
+        assertArrayEquals(new long[]{TopPages.key(3, 8), TopPages.key(1, 7)}, top);
+    }
+
+    @Test
+    void returnsNothingForZeroOrNegativeK() {
+        SearchHits hits = new SearchHits(new int[]{1}, new float[]{1}, 1);
+
+        assertEquals(0, TopPages.select(hits, 0).length);
+        assertEquals(0, TopPages.select(hits, -1).length);
+        assertEquals(0, TopPages.select(SearchHits.EMPTY, 5).length);
+    }
+
+    @Test
+    void keyRoundTripsPageAndRelevance() {
+        long key = TopPages.key(123.25f, Integer.MAX_VALUE);
+
+        assertEquals(Integer.MAX_VALUE, TopPages.pageId(key));
+        assertEquals(123.25f, TopPages.relevance(key));
+        assertTrue(TopPages.key(0.5f, Integer.MAX_VALUE) < TopPages.key(0.75f, 1));
+    }
+}
@@ -0,0 +1,56 @@
+package searchengine.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeflateConverterTest {
+    private final DeflateConverter converter = new DeflateConverter();
+
+    @Test
+    void roundTripsHtml() {
+        String html = "<html><head><title>Поиск</title></head><body>" + "<p>Страница сайта, search engine.</p>".repeat(500)
+                + "</body></html>";
+
+        byte[] compressed = DeflateConverter.compress(html);
+
+        assertTrue(compressed.length < html.length() / 4);
+        assertEquals(html, DeflateConverter.decompress(compressed));
+    }
+
+    @Test
+    void roundTripsEmptyText() {
+        assertEquals("", DeflateConverter.decompress(DeflateConverter.compress("")));
+    }
+
+    @Test
+    void roundTripsIncompressibleText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            text.appendCodePoint(0x400 + (i * 7919) % 0x60);
+        }
+        assertEquals(text.toString(), DeflateConverter.decompress(DeflateConverter.compress(text.toString())));
+    }
+
+    @Test
+    void passesNullThrough() {
+        assertNull(converter.convertToDatabaseColumn(null));
+        assertNull(converter.convertToEntityAttribute(null));
+    }
+
+    @Test
+    void rejectsTruncatedData() {
+        byte[] compressed = DeflateConverter.compress("<p>текст страницы</p>".repeat(200));
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+        assertThrows(IllegalArgumentException.class, () -> DeflateConverter.decompress(truncated));
+        assertThrows(IllegalArgumentException.class, () -> DeflateConverter.decompress(new byte[0]));
+    }
+
+    @Test
+    void rejectsCorruptedData() {
+        assertThrows(IllegalArgumentException.class, () -> DeflateConverter.decompress(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+    }
+}
@@ -0,0 +1,83 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrawlFrontierTest {
+
+    @Test
+    void visitsEveryReachableUrlOnce() throws InterruptedException {
+        Map<String, List<String>> links = Map.of(
+                "http://site.ru/", List.of("http://site.ru/a", "http://site.ru/b"),
+                "http://site.ru/a", List.of("http://site.ru/", "http://site.ru/b", "http://site.ru/c"),
+                "http://site.ru/b", List.of("http://site.ru/c"),
+                "http://site.ru/c", List.of());
+        GraphCrawler crawler = new GraphCrawler(links);
+        CrawlFrontier frontier = new CrawlFrontier(Executors.newFixedThreadPool(4), 4, 2);
+
+        frontier.addSite(crawler, "http://site.ru/", 1000, 10);
+
+        assertTrue(frontier.await());
+        assertEquals(4, crawler.visited.size());
+        assertEquals(links.keySet(), Set.copyOf(crawler.visited));
+        assertEquals(0, frontier.queued("http://site.ru/"));
+    }
+
+    @Test
+    void finishesSiteWhenPageFails() throws InterruptedException {
+        GraphCrawler crawler = new GraphCrawler(Map.of("http://site.ru/", List.of("http://site.ru/broken")));
+        CrawlFrontier frontier = new CrawlFrontier(Executors.newFixedThreadPool(2), 2, 1);
+
+        frontier.addSite(crawler, "http://site.ru/", 1000, 10);
+
+        assertTrue(frontier.await());
+        assertEquals(List.of("http://site.ru/", "http://site.ru/broken"), List.copyOf(crawler.visited));
+    }
+
+    @Test
+    void reportsStoppedCrawl() throws InterruptedException {
+        CrawlFrontier frontier = new CrawlFrontier(Executors.newFixedThreadPool(1), 1, 1);
+        GraphCrawler crawler = new GraphCrawler(Map.of()) {
+            @Override
+            public void crawl(String url, Consumer<List<String>> onLinks) {
+                frontier.stop();
+            }
+        };
+
+        frontier.addSite(crawler, "http://site.ru/", 1000, 1);
+
+        assertFalse(frontier.await());
+    }
+
+    /**
+     * Обходит заданный граф ссылок; страницы вне графа завершаются ошибкой.
+     */
+    private static class GraphCrawler extends WebCrawler {
+        private final Map<String, List<String>> links;
+        private final Queue<String> visited = new ConcurrentLinkedQueue<>();
+
+        GraphCrawler(Map<String, List<String>> links) {
+            super(null, null, null, null, null, 0, null, null);
+            this.links = links;
+        }
+
+        @Override
+        public void crawl(String url, Consumer<List<String>> onLinks) throws InterruptedException {
+            visited.add(url);
+            List<String> found = links.get(url);
+            if (found == null) {
+                throw new IllegalStateException("Нет страницы " + url);
+            }
+            onLinks.accept(found);
+        }
+    }
+}
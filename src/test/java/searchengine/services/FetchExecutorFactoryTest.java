@@ -0,0 +1,41 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import searchengine.config.CrawlerSettings;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FetchExecutorFactoryTest {
+
+    @Test
+    void providesFactoryForPlatformMode() {
+        assertEquals(1, factories("platform"));
+    }
+
+    @Test
+    void providesFactoryForVirtualModeInAnyBuild() {
+        assertEquals(1, factories("virtual"));
+    }
+
+    private static int factories(String fetchMode) {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.getEnvironment().getPropertySources().addFirst(
+                    new MapPropertySource("test", Map.of("indexing-settings.crawler.fetch-mode", fetchMode)));
+            CrawlerSettings settings = new CrawlerSettings();
+            settings.setFetchMode(fetchMode);
+            context.registerBean(CrawlerSettings.class, () -> settings);
+            context.register(PlatformFetchExecutorFactory.class);
+            try {
+                // Есть только в сборке с профилем java21.
+                context.register(Class.forName("searchengine.services.VirtualThreadFetchExecutorFactory"));
+            } catch (ClassNotFoundException ignored) {
+            }
+            context.refresh();
+            return context.getBeansOfType(FetchExecutorFactory.class).size();
+        }
+    }
+}
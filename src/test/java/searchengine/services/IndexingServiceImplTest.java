@@ -0,0 +1,50 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+import searchengine.config.CrawlerSettings;
+import searchengine.config.SitesList;
+import searchengine.index.InvertedIndex;
+import searchengine.model.Site;
+import searchengine.repositories.LemmaRepository;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class IndexingServiceImplTest {
+    private final SiteRepository siteRepository = mock(SiteRepository.class);
+    private final PageRepository pageRepository = mock(PageRepository.class);
+    private final LemmaRepository lemmaRepository = mock(LemmaRepository.class);
+    private final IndexingServiceImpl indexingService = new IndexingServiceImpl(new SitesList(), siteRepository,
+            pageRepository, lemmaRepository, mock(PageContents.class), mock(LemmasFinder.class), mock(PageWriter.class),
+            mock(LemmaDictionary.class), mock(SiteGenerations.class), new CrawlerSettings(), mock(FetchExecutorFactory.class),
+            mock(QueryPlanner.class), mock(InvertedIndex.class), mock(CrawlMetrics.class), new IndexingProgress());
+
+    @Test
+    void countsOnlySitesWithoutStoredCounts() {
+        Site uncounted = site(1, null);
+        Site empty = site(2, 0);
+        when(siteRepository.findAll()).thenReturn(List.of(uncounted, empty));
+        when(pageRepository.countBySiteId(1)).thenReturn(12);
+        when(lemmaRepository.countBySite_Id(1)).thenReturn(34L);
+
+        indexingService.refreshMissingCounts();
+
+        assertEquals((Integer) 12, uncounted.getPageCount());
+        assertEquals((Integer) 34, uncounted.getLemmaCount());
+        verify(siteRepository).save(uncounted);
+        verify(pageRepository, never()).countBySiteId(2);
+        verify(siteRepository, never()).save(empty);
+    }
+
+    private static Site site(int id, Integer counts) {
+        Site site = new Site();
+        site.setId(id);
+        site.setPageCount(counts);
+        site.setLemmaCount(counts);
+        return site;
+    }
+}
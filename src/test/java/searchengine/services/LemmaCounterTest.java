@@ -0,0 +1,52 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LemmaCounterTest {
+
+    @Test
+    void countsLikeHashMapWhileGrowing() {
+        Random random = new Random(1);
+        LemmaCounter counter = new LemmaCounter();
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 50_000; i++) {
+            // Новые экземпляры строк: сравнение не должно полагаться только на ссылки.
+            String lemma = new String("лемма" + random.nextInt(3000));
+            counter.increment(lemma);
+            expected.merge(lemma, 1, Integer::sum);
+        }
+
+        assertEquals(expected.size(), counter.size());
+        assertEquals(expected, counter.toMap());
+        expected.forEach((lemma, count) -> assertEquals((int) count, counter.get(lemma)));
+        assertEquals(0, counter.get("нет"));
+    }
+
+    @Test
+    void mergesCountersAndAppliesDeltas() {
+        LemmaCounter first = new LemmaCounter();
+        first.add("поиск", 2);
+        first.accept(0, 5, "сайт");
+        LemmaCounter second = new LemmaCounter();
+        second.add("поиск", 3);
+        second.add("индекс", -1);
+
+        first.addAll(second);
+
+        assertEquals(Map.of("поиск", 5, "сайт", 1, "индекс", -1), first.toMap());
+    }
+
+    @Test
+    void startsEmpty() {
+        LemmaCounter counter = new LemmaCounter();
+
+        assertTrue(counter.isEmpty());
+        assertEquals(Map.of(), counter.toMap());
+    }
+}
@@ -0,0 +1,136 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import searchengine.config.PageWriterSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LemmaDictionaryTest {
+    private FakeJdbcTemplate jdbcTemplate;
+    private LemmaDictionary dictionary;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new FakeJdbcTemplate();
+        dictionary = new LemmaDictionary(jdbcTemplate, new PageWriterSettings());
+    }
+
+    @Test
+    void issuesIdsAfterStoredMaximumOncePerSiteLemma() {
+        assertNull(dictionary.size(1));
+
+        LemmaDictionary.Entry search = dictionary.resolve(1, "поиск");
+        LemmaDictionary.Entry index = dictionary.resolve(1, "индекс");
+        LemmaDictionary.Entry otherSite = dictionary.resolve(2, "поиск");
+
+        assertEquals(42, search.getId());
+        assertEquals(43, index.getId());
+        assertEquals(44, otherSite.getId());
+        assertSame(search, dictionary.resolve(1, "поиск"));
+        assertSame(search, dictionary.find(1, "поиск"));
+        assertNull(dictionary.find(1, "сайт"));
+        assertEquals((Integer) 2, dictionary.size(1));
+    }
+
+    @Test
+    void persistsNewLemmasOnceSortedById() {
+        LemmaDictionary.Entry second = dictionary.resolve(1, "б");
+        LemmaDictionary.Entry first = dictionary.resolve(1, "а");
+
+        List<LemmaDictionary.Entry> created = dictionary.persistNew(List.of(first, second, first));
+
+        assertEquals(List.of(second, first), created);
+        assertEquals(List.of(42, 43), jdbcTemplate.batchIds());
+
+        dictionary.markPersisted(created);
+        jdbcTemplate.batches.clear();
+        assertTrue(dictionary.persistNew(List.of(first, second)).isEmpty());
+        assertTrue(jdbcTemplate.batches.isEmpty());
+    }
+
+    @Test
+    void flushesSummedFrequencyDeltas() {
+        LemmaDictionary.Entry search = dictionary.resolve(1, "поиск");
+        LemmaDictionary.Entry index = dictionary.resolve(1, "индекс");
+        dictionary.addFrequency(search, 1);
+        dictionary.addFrequency(search, 1);
+        dictionary.addFrequency(index, 1);
+        dictionary.addFrequency(index, -1);
+
+        dictionary.flush();
+
+        assertEquals(1, jdbcTemplate.batches.size());
+        List<Object[]> rows = jdbcTemplate.batches.get(0);
+        assertEquals(1, rows.size());
+        assertArrayEquals(new Object[]{42, 1, "поиск", 2L}, rows.get(0));
+
+        jdbcTemplate.batches.clear();
+        dictionary.flush();
+        assertTrue(jdbcTemplate.batches.isEmpty());
+    }
+
+    @Test
+    void keepsDeltasWhenFlushFails() {
+        LemmaDictionary.Entry search = dictionary.resolve(1, "поиск");
+        dictionary.addFrequency(search, 3);
+        jdbcTemplate.failNextBatch = true;
+
+        assertThrows(DataAccessResourceFailureException.class, () -> dictionary.flush());
+        dictionary.flush();
+
+        assertEquals(1, jdbcTemplate.batches.size());
+        assertArrayEquals(new Object[]{42, 1, "поиск", 3L}, jdbcTemplate.batches.get(0).get(0));
+    }
+
+    @Test
+    void dropsForgottenSite() {
+        LemmaDictionary.Entry search = dictionary.resolve(1, "поиск");
+        dictionary.addFrequency(search, 1);
+
+        dictionary.forgetSite(1);
+        dictionary.flush();
+
+        assertNull(dictionary.size(1));
+        assertTrue(jdbcTemplate.batches.isEmpty());
+    }
+
+    /**
+     * Пустая таблица lemma с максимальным id 41; пакетные запросы запоминаются.
+     */
+    private static final class FakeJdbcTemplate extends JdbcTemplate {
+        private final List<List<Object[]>> batches = new ArrayList<>();
+        private boolean failNextBatch;
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+        }
+
+        @Override
+        public <T> T queryForObject(String sql, Class<T> requiredType) {
+            return requiredType.cast(41);
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            if (failNextBatch) {
+                failNextBatch = false;
+                throw new DataAccessResourceFailureException("нет соединения");
+            }
+            batches.add(new ArrayList<>(batchArgs));
+            return new int[batchArgs.size()];
+        }
+
+        List<Integer> batchIds() {
+            List<Integer> ids = new ArrayList<>();
+            batches.forEach(batch -> batch.forEach(row -> ids.add((Integer) row[0])));
+            return ids;
+        }
+    }
+}
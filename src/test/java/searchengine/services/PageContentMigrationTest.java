@@ -0,0 +1,132 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.model.DeflateConverter;
+import searchengine.repositories.PageRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PageContentMigrationTest {
+    private PageRepository pageRepository;
+    private RecordingJdbcTemplate jdbcTemplate;
+    private PageContentMigration migration;
+
+    @BeforeEach
+    void setUp() {
+        pageRepository = mock(PageRepository.class);
+        jdbcTemplate = new RecordingJdbcTemplate();
+        migration = new PageContentMigration(pageRepository, jdbcTemplate,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+    }
+
+    @Test
+    void movesContentInBatchesAndClearsPages() {
+        int pages = PageContentMigration.BATCH_SIZE + 3;
+        List<Integer> firstBatch = ids(1, PageContentMigration.BATCH_SIZE);
+        List<Integer> secondBatch = ids(PageContentMigration.BATCH_SIZE + 1, pages);
+        when(pageRepository.findIdsWithLegacyContentAfter(0, PageRequest.of(0, PageContentMigration.BATCH_SIZE)))
+                .thenReturn(firstBatch);
+        when(pageRepository.findIdsWithLegacyContentAfter(PageContentMigration.BATCH_SIZE,
+                PageRequest.of(0, PageContentMigration.BATCH_SIZE))).thenReturn(secondBatch);
+        when(pageRepository.findLegacyContentByIdIn(firstBatch)).thenReturn(contents(firstBatch));
+        when(pageRepository.findLegacyContentByIdIn(secondBatch)).thenReturn(contents(secondBatch));
+
+        assertEquals(pages, migration.migrate());
+
+        Map<Integer, String> bodies = jdbcTemplate.bodies();
+        assertEquals(pages, bodies.size());
+        for (int id = 1; id <= pages; id++) {
+            assertEquals(content(id), bodies.get(id));
+        }
+        assertEquals(pages, jdbcTemplate.clearedPages.size());
+    }
+
+    @Test
+    void skipsPagesClearedAfterTheIdQuery() {
+        List<Integer> batch = ids(1, 3);
+        when(pageRepository.findIdsWithLegacyContentAfter(0, PageRequest.of(0, PageContentMigration.BATCH_SIZE)))
+                .thenReturn(batch);
+        when(pageRepository.findLegacyContentByIdIn(batch)).thenReturn(contents(List.of(1, 3)));
+
+        assertEquals(2, migration.migrate());
+        assertEquals(Map.of(1, content(1), 3, content(3)), jdbcTemplate.bodies());
+    }
+
+    @Test
+    void doesNothingWithoutLegacyContent() {
+        assertEquals(0, migration.migrate());
+        assertTrue(jdbcTemplate.bodies().isEmpty());
+    }
+
+    private static List<Integer> ids(int from, int to) {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = from; id <= to; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static List<PageRepository.LegacyContent> contents(List<Integer> ids) {
+        List<PageRepository.LegacyContent> contents = new ArrayList<>();
+        for (int id : ids) {
+            contents.add(new LegacyContent(id, content(id)));
+        }
+        return contents;
+    }
+
+    private static String content(int id) {
+        return "<html><body>Страница " + id + "</body></html>";
+    }
+
+    private record LegacyContent(int id, String content) implements PageRepository.LegacyContent {
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public String getContent() {
+            return content;
+        }
+    }
+
+    /**
+     * Запоминает пакетные запросы вместо выполнения.
+     */
+    private static final class RecordingJdbcTemplate extends JdbcTemplate {
+        private final List<Object[]> insertedContents = new ArrayList<>();
+        private final List<Object[]> clearedPages = new ArrayList<>();
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            if (sql.startsWith("INSERT INTO page_content")) {
+                insertedContents.addAll(batchArgs);
+            } else if (sql.startsWith("UPDATE page SET content = ''")) {
+                clearedPages.addAll(batchArgs);
+            } else {
+                throw new IllegalArgumentException(sql);
+            }
+            return new int[batchArgs.size()];
+        }
+
+        Map<Integer, String> bodies() {
+            Map<Integer, String> bodies = new HashMap<>();
+            for (Object[] row : insertedContents) {
+                bodies.put((Integer) row[0], DeflateConverter.decompress((byte[]) row[1]));
+            }
+            return bodies;
+        }
+    }
+}
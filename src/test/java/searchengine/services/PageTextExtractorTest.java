@@ -0,0 +1,45 @@
+package searchengine.services;
+
+import org.jsoup.Connection;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PageTextExtractorTest {
+
+    @Test
+    void limitsPlainTextLikeBinaryDocuments() throws Exception {
+        PageTextExtractor.Extracted extracted = PageTextExtractor.extract(response("text/plain; charset=UTF-8", "слово ".repeat(100)), 20);
+
+        assertEquals("слово слово слово сл", extracted.content());
+        assertEquals("слово слово слово сл", extracted.text());
+        assertNull(extracted.document());
+    }
+
+    @Test
+    void keepsShortPlainTextAndSurrogatePairs() throws Exception {
+        assertEquals("текст", PageTextExtractor.extract(response("text/plain", "текст"), 20).content());
+        assertEquals("a", PageTextExtractor.extract(response("text/plain", "a😀b"), 2).content());
+    }
+
+    @Test
+    void parsesHtmlTitleAndVisibleText() throws Exception {
+        Connection.Response response = response("text/html; charset=UTF-8", "");
+        when(response.parse()).thenReturn(org.jsoup.Jsoup.parse(
+                "<html><head><title>Заголовок</title></head><body><p>Видимый   текст</p><script>x()</script></body></html>"));
+
+        PageTextExtractor.Extracted extracted = PageTextExtractor.extract(response, 5);
+
+        assertEquals("Заголовок", extracted.title());
+        assertEquals("Заголовок Видимый текст", extracted.text());
+    }
+
+    private static Connection.Response response(String contentType, String body) {
+        Connection.Response response = mock(Connection.Response.class);
+        when(response.contentType()).thenReturn(contentType);
+        when(response.body()).thenReturn(body);
+        return response;
+    }
+}
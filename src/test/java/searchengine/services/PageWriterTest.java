@@ -0,0 +1,289 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.PageWriterSettings;
+import searchengine.index.InvertedIndex;
+import searchengine.model.Site;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PageWriterTest {
+    private static final String TEXT_SQL = "INSERT INTO page_text";
+    private static final String INDEX_INSERT_SQL = "INSERT INTO `index`";
+    private static final String INDEX_UPDATE_SQL = "UPDATE `index`";
+    private static final String INDEX_DELETE_SQL = "DELETE FROM `index`";
+
+    private final Site site = new Site();
+    private PageWriterSettings settings;
+    private FakeJdbcTemplate jdbcTemplate;
+    private InvertedIndex invertedIndex;
+    private LemmaDictionary lemmaDictionary;
+    private CrawlMetrics crawlMetrics;
+    private PageWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        site.setId(1);
+        site.setUrl("https://example.com");
+        settings = new PageWriterSettings();
+        settings.setThreads(1);
+        settings.setBatchSize(3);
+        settings.setFlushIntervalMs(1000);
+        settings.setRetries(2);
+        settings.setRetryDelayMs(0);
+        jdbcTemplate = new FakeJdbcTemplate();
+        invertedIndex = mock(InvertedIndex.class);
+        lemmaDictionary = new LemmaDictionary(jdbcTemplate, settings);
+        crawlMetrics = mock(CrawlMetrics.class);
+        writer = new PageWriter(settings, jdbcTemplate, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                invertedIndex, lemmaDictionary, crawlMetrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.shutdown();
+    }
+
+    @Test
+    void insertsNewPageAndUpdatesIndexAfterCommit() {
+        List<Boolean> persistedOnAdd = new ArrayList<>();
+        doAnswer(invocation -> {
+            persistedOnAdd.add(lemmaDictionary.find(1, "поиск").isPersisted());
+            return null;
+        }).when(invertedIndex).addPage(anyInt(), anyInt(), any(), any());
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            writer.write(List.of(page("/a", "a", "поиск", "поиск", "индекс")));
+
+            verifyNoInteractions(invertedIndex);
+            assertFalse(lemmaDictionary.find(1, "поиск").isPersisted());
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(List.of("/a"), jdbcTemplate.insertedPaths);
+        int pageId = FakeJdbcTemplate.FIRST_PAGE_ID;
+        int search = lemmaDictionary.find(1, "поиск").getId();
+        int index = lemmaDictionary.find(1, "индекс").getId();
+        assertEquals(Set.of(List.of(pageId, search, 2f), List.of(pageId, index, 1f)), jdbcTemplate.rows(INDEX_INSERT_SQL));
+        assertEquals(List.of(true), persistedOnAdd);
+        verify(invertedIndex).removePage(1, pageId, Map.of());
+        verify(invertedIndex).addPage(1, pageId, Map.of("поиск", search, "индекс", index), Map.of("поиск", 2, "индекс", 1));
+        assertEquals(1L, lemmaDictionary.find(1, "поиск").getPendingFrequency().sum());
+        assertEquals(1L, lemmaDictionary.find(1, "индекс").getPendingFrequency().sum());
+    }
+
+    @Test
+    void rewritesOnlyChangedIndexRowsOfUpdatedPage() {
+        jdbcTemplate.storeLemma(7, "поиск");
+        jdbcTemplate.storeLemma(8, "индекс");
+        jdbcTemplate.storeLemma(9, "старый");
+        jdbcTemplate.storeIndex(5, 7, "поиск", 1f);
+        jdbcTemplate.storeIndex(5, 8, "индекс", 2f);
+        jdbcTemplate.storeIndex(5, 9, "старый", 1f);
+
+        writer.write(List.of(page("/a", "a", "поиск", "индекс", "индекс", "индекс", "новый").replacing(5)));
+
+        int added = lemmaDictionary.find(1, "новый").getId();
+        assertTrue(jdbcTemplate.insertedPaths.isEmpty());
+        assertEquals(Set.of(List.of(5, 9)), jdbcTemplate.rows(INDEX_DELETE_SQL));
+        assertEquals(Set.of(List.of(3f, 5, 8)), jdbcTemplate.rows(INDEX_UPDATE_SQL));
+        assertEquals(Set.of(List.of(5, added, 1f)), jdbcTemplate.rows(INDEX_INSERT_SQL));
+        verify(invertedIndex).removePage(1, 5, Map.of("старый", 9));
+        verify(invertedIndex).addPage(1, 5, Map.of("поиск", 7, "индекс", 8, "новый", added),
+                Map.of("поиск", 1, "индекс", 3, "новый", 1));
+        assertEquals(0L, lemmaDictionary.find(1, "поиск").getPendingFrequency().sum());
+        assertEquals(1L, lemmaDictionary.find(1, "новый").getPendingFrequency().sum());
+        assertEquals(-1L, lemmaDictionary.find(1, "старый").getPendingFrequency().sum());
+    }
+
+    @Test
+    void retriesFailedBatch() throws InterruptedException {
+        jdbcTemplate.failingTextBatches = 1;
+        writer.start();
+
+        writer.submit(page("/a", "a", "поиск"));
+        writer.submit(page("/b", "b", "поиск"));
+        writer.submit(page("/c", "c", "поиск"));
+        writer.awaitIdle();
+
+        assertEquals(List.of(List.of("a", "b", "c")), jdbcTemplate.textBatches);
+        assertNull(writer.failure(1));
+        verify(crawlMetrics).recordBatch(eq(3), anyLong());
+        verify(invertedIndex, times(3)).addPage(eq(1), anyInt(), any(), any());
+    }
+
+    @Test
+    void writesPagesOneByOneWhenBatchKeepsFailing() throws InterruptedException {
+        jdbcTemplate.brokenTitle = "b";
+        writer.start();
+
+        writer.submit(page("/a", "a", "поиск"));
+        writer.submit(page("/b", "b", "поиск"));
+        writer.submit(page("/c", "c", "поиск"));
+        writer.awaitIdle();
+
+        assertEquals(List.of(List.of("a"), List.of("c")), jdbcTemplate.textBatches);
+        assertEquals(3 + 3, jdbcTemplate.textAttempts);
+        assertTrue(writer.failure(1).contains("/b"));
+        verify(crawlMetrics, times(2)).recordBatch(eq(1), anyLong());
+        verify(invertedIndex, times(2)).addPage(eq(1), anyInt(), any(), any());
+
+        writer.resetFailures();
+        assertNull(writer.failure(1));
+    }
+
+    private ParsedPage page(String path, String title, String... lemmas) {
+        PageTokens tokens = new PageTokens();
+        int position = 0;
+        for (String lemma : lemmas) {
+            tokens.accept(position, position + lemma.length(), lemma);
+            position += lemma.length() + 1;
+        }
+        return ParsedPage.indexed(site, path, "<html></html>", title, String.join(" ", lemmas), tokens,
+                new PageVersion(null, null, path));
+    }
+
+    /**
+     * Таблицы в памяти без отката: страницы получают id по порядку, строки index и lemma задаются тестом.
+     * Пачка page_text с заголовком brokenTitle и первые failingTextBatches пачек page_text падают.
+     */
+    private static final class FakeJdbcTemplate extends JdbcTemplate {
+        static final int FIRST_PAGE_ID = 1000;
+
+        private final Map<String, Integer> lemmas = new HashMap<>();
+        private final List<Object[]> storedIndices = new ArrayList<>();
+        private final Map<String, List<Object[]>> batches = new HashMap<>();
+        private final List<String> insertedPaths = new ArrayList<>();
+        private final List<List<String>> textBatches = new ArrayList<>();
+        private int nextPageId = FIRST_PAGE_ID;
+        private int failingTextBatches;
+        private String brokenTitle;
+        private int textAttempts;
+
+        void storeLemma(int id, String lemma) {
+            lemmas.put(lemma, id);
+        }
+
+        void storeIndex(int pageId, int lemmaId, String lemma, float rank) {
+            storedIndices.add(new Object[]{pageId, lemmaId, lemma, rank});
+        }
+
+        Set<List<Object>> rows(String sqlPrefix) {
+            Set<List<Object>> rows = new HashSet<>();
+            batches.forEach((sql, args) -> {
+                if (sql.startsWith(sqlPrefix)) {
+                    args.forEach(row -> rows.add(Arrays.asList(row)));
+                }
+            });
+            return rows;
+        }
+
+        @Override
+        public <T> T queryForObject(String sql, Class<T> requiredType) {
+            return requiredType.cast(100);
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+            try {
+                if (sql.startsWith("SELECT id, lemma FROM lemma")) {
+                    for (Map.Entry<String, Integer> lemma : lemmas.entrySet()) {
+                        ResultSet row = mock(ResultSet.class);
+                        when(row.getInt(1)).thenReturn(lemma.getValue());
+                        when(row.getString(2)).thenReturn(lemma.getKey());
+                        rch.processRow(row);
+                    }
+                    return;
+                }
+                List<Object> pageIds = Arrays.asList(args);
+                for (Object[] index : storedIndices) {
+                    if (pageIds.contains(index[0])) {
+                        ResultSet row = mock(ResultSet.class);
+                        when(row.getInt(1)).thenReturn((Integer) index[0]);
+                        when(row.getInt(2)).thenReturn((Integer) index[1]);
+                        when(row.getString(3)).thenReturn((String) index[2]);
+                        when(row.getFloat(4)).thenReturn((Float) index[3]);
+                        rch.processRow(row);
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public <T> T execute(ConnectionCallback<T> action) {
+            try {
+                List<String> paths = new ArrayList<>();
+                PreparedStatement statement = mock(PreparedStatement.class);
+                doAnswer(invocation -> {
+                    if ((Integer) invocation.getArgument(0) == 2) {
+                        paths.add(invocation.getArgument(1));
+                    }
+                    return null;
+                }).when(statement).setString(anyInt(), any());
+                ResultSet keys = mock(ResultSet.class);
+                int[] next = {0};
+                when(keys.next()).thenAnswer(invocation -> next[0] < paths.size());
+                when(keys.getInt(1)).thenAnswer(invocation -> {
+                    next[0]++;
+                    return nextPageId++;
+                });
+                when(statement.getGeneratedKeys()).thenReturn(keys);
+                Connection connection = mock(Connection.class);
+                when(connection.prepareStatement(anyString(), anyInt())).thenReturn(statement);
+                T result = action.doInConnection(connection);
+                insertedPaths.addAll(paths);
+                return result;
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            if (sql.startsWith(TEXT_SQL) && !batchArgs.isEmpty()) {
+                textAttempts++;
+                boolean broken = batchArgs.stream().anyMatch(row -> row[1].equals(brokenTitle));
+                if (broken || failingTextBatches > 0) {
+                    failingTextBatches--;
+                    throw new DataAccessResourceFailureException("нет соединения");
+                }
+                List<String> titles = new ArrayList<>();
+                batchArgs.forEach(row -> titles.add((String) row[1]));
+                textBatches.add(titles);
+            }
+            batches.computeIfAbsent(sql, s -> new ArrayList<>()).addAll(batchArgs);
+            return new int[batchArgs.size()];
+        }
+
+        @Override
+        public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                       ParameterizedPreparedStatementSetter<T> pss) {
+            batches.computeIfAbsent(sql, s -> new ArrayList<>()).addAll((Collection<Object[]>) batchArgs);
+            return new int[0][];
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import searchengine.dto.indexing.StageStatistics;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineStageTest {
+    private PipelineStage stage;
+
+    @AfterEach
+    void tearDown() {
+        if (stage != null) {
+            stage.shutdown();
+        }
+    }
+
+    @Test
+    void awaitIdleWaitsForRunningAndQueuedTasks() throws Exception {
+        stage = new PipelineStage("test", 1, 4);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger done = new AtomicInteger();
+        stage.submit(() -> {
+            started.countDown();
+            release.await();
+            done.incrementAndGet();
+        });
+        stage.submit(done::incrementAndGet);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        StageStatistics statistics = stage.statistics();
+        assertEquals(1, statistics.getActive());
+        assertEquals(1, statistics.getQueued());
+
+        Thread waiter = new Thread(() -> {
+            try {
+                stage.awaitIdle();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        waiter.join(200);
+        assertTrue(waiter.isAlive());
+
+        release.countDown();
+        waiter.join(5000);
+        assertFalse(waiter.isAlive());
+        assertEquals(2, done.get());
+        assertEquals(0, stage.statistics().getActive());
+    }
+
+    @Test
+    void countsFailedTaskAsCompleted() throws Exception {
+        stage = new PipelineStage("test", 2, 4);
+        AtomicInteger done = new AtomicInteger();
+        stage.submit(() -> {
+            throw new IllegalStateException("сбой");
+        });
+        stage.submit(done::incrementAndGet);
+
+        stage.awaitIdle();
+
+        assertEquals(1, done.get());
+    }
+
+    @Test
+    void blocksSubmitWhileQueueIsFull() throws Exception {
+        stage = new PipelineStage("test", 1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        stage.submit(() -> {
+            started.countDown();
+            release.await();
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        stage.submit(() -> {
+        });
+
+        Thread producer = new Thread(() -> {
+            try {
+                stage.submit(() -> {
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        release.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        stage.awaitIdle();
+    }
+
+    @Test
+    void shutdownDropsQueuedTasksAndReleasesWaiters() throws Exception {
+        stage = new PipelineStage("test", 1, 4);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger done = new AtomicInteger();
+        stage.submit(() -> {
+            started.countDown();
+            new CountDownLatch(1).await();
+        });
+        stage.submit(done::incrementAndGet);
+        stage.submit(done::incrementAndGet);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        stage.shutdown();
+        stage.awaitIdle();
+
+        assertEquals(0, done.get());
+        assertEquals(0, stage.statistics().getQueued());
+    }
+}
@@ -0,0 +1,108 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import searchengine.config.SearchSettings;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class QueryPlannerTest {
+    private FakeJdbcTemplate jdbcTemplate;
+    private QueryPlanner planner;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new FakeJdbcTemplate();
+        jdbcTemplate.pages(1, 10);
+        jdbcTemplate.lemma(1, "поиск", 9);
+        jdbcTemplate.lemma(1, "индекс", 2);
+        jdbcTemplate.lemma(1, "сайт", 5);
+        jdbcTemplate.pages(2, 10);
+        jdbcTemplate.lemma(2, "поиск", 8);
+        jdbcTemplate.lemma(2, "индекс", 1);
+        jdbcTemplate.lemma(2, "сайт", 3);
+        planner = new QueryPlanner(jdbcTemplate, new SearchSettings());
+    }
+
+    @Test
+    void sortsLemmasByNameBeforeFrequenciesAreLoaded() {
+        assertEquals(List.of("индекс", "поиск", "сайт"), planner.plan(List.of("поиск", "сайт", "индекс"), List.of(1, 2)));
+    }
+
+    @Test
+    void ordersLemmasByDocumentFrequencyOverRequestedSites() {
+        planner.refresh();
+
+        assertEquals(List.of("индекс", "сайт"), planner.plan(List.of("поиск", "сайт", "индекс"), List.of(1, 2)));
+        assertEquals(List.of("сайт"), planner.plan(List.of("поиск", "сайт"), List.of(1)));
+        assertEquals(List.of("сайт", "поиск"), planner.plan(List.of("поиск", "сайт"), List.of(2)));
+    }
+
+    @Test
+    void keepsRarestLemmaEvenWhenItIsTooFrequent() {
+        planner.refresh();
+
+        assertEquals(List.of("поиск"), planner.plan(List.of("поиск"), List.of(1, 2)));
+    }
+
+    @Test
+    void treatsUnknownLemmaAsRare() {
+        planner.refresh();
+
+        assertEquals(List.of("новый", "индекс"), planner.plan(List.of("поиск", "индекс", "новый"), List.of(1)));
+        assertEquals(List.of("индекс", "поиск"), planner.plan(List.of("поиск", "индекс"), List.of(3)));
+    }
+
+    @Test
+    void changesGenerationOnRefresh() {
+        long before = planner.generation();
+
+        planner.refresh();
+        planner.refresh();
+
+        assertEquals(before + 2, planner.generation());
+    }
+
+    /**
+     * Отдаёт заданные тестом частоты лемм и число страниц сайтов.
+     */
+    private static final class FakeJdbcTemplate extends JdbcTemplate {
+        private final List<Object[]> lemmas = new ArrayList<>();
+        private final List<Object[]> pages = new ArrayList<>();
+
+        void lemma(int siteId, String lemma, int frequency) {
+            lemmas.add(new Object[]{siteId, lemma, frequency});
+        }
+
+        void pages(int siteId, int count) {
+            pages.add(new Object[]{siteId, count});
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch) {
+            try {
+                for (Object[] values : sql.contains("FROM lemma") ? lemmas : pages) {
+                    ResultSet row = mock(ResultSet.class);
+                    when(row.getInt(1)).thenReturn((Integer) values[0]);
+                    if (values.length == 3) {
+                        when(row.getString(2)).thenReturn((String) values[1]);
+                        when(row.getInt(3)).thenReturn((Integer) values[2]);
+                    } else {
+                        when(row.getInt(2)).thenReturn((Integer) values[1]);
+                    }
+                    rch.processRow(row);
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import searchengine.config.SearchSettings;
+import searchengine.index.TopPages;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchResultCacheTest {
+    private static final SearchResultCache.Key KEY = SearchResultCache.key(List.of("индекс", "поиск"), null);
+    private static final List<Integer> SITES = List.of(1, 2);
+
+    private SearchResultCache cache;
+    private SearchResultCache.Ranking ranking;
+
+    @BeforeEach
+    void setUp() {
+        cache = new SearchResultCache(new SearchSettings());
+        ranking = new SearchResultCache.Ranking(new long[]{TopPages.key(3f, 30), TopPages.key(2f, 20), TopPages.key(1f, 10)}, 5);
+        cache.put(KEY, SITES, 7, 2, ranking);
+    }
+
+    @Test
+    void findsRankingForSameKeyAndVersions() {
+        assertSame(ranking, cache.find(SearchResultCache.key(List.of("индекс", "поиск"), ""), SITES, 7, 2, 3));
+        assertNull(cache.find(SearchResultCache.key(List.of("индекс", "поиск"), "https://site.example"), SITES, 7, 2, 3));
+    }
+
+    @Test
+    void dropsEntryWhenIndexVersionChanged() {
+        assertNull(cache.find(KEY, SITES, 8, 2, 3));
+        assertNull(cache.find(KEY, SITES, 7, 2, 3));
+    }
+
+    @Test
+    void dropsEntryWhenPlannerGenerationChanged() {
+        assertNull(cache.find(KEY, SITES, 7, 3, 3));
+        assertNull(cache.find(KEY, SITES, 7, 2, 3));
+    }
+
+    @Test
+    void dropsEntryWhenActiveSitesChanged() {
+        assertNull(cache.find(KEY, List.of(1, 3), 7, 2, 3));
+        assertNull(cache.find(KEY, SITES, 7, 2, 3));
+    }
+
+    @Test
+    void missesWhenEntryHasFewerPagesThanNeeded() {
+        assertNull(cache.find(KEY, SITES, 7, 2, 4));
+        assertSame(ranking, cache.find(KEY, SITES, 7, 2, 3));
+
+        SearchResultCache.Ranking complete = new SearchResultCache.Ranking(ranking.pages(), 3);
+        cache.put(KEY, SITES, 7, 2, complete);
+        assertSame(complete, cache.find(KEY, SITES, 7, 2, 10));
+    }
+
+    @Test
+    void removesPagesFromRankingAndCount() {
+        SearchResultCache.Ranking kept = ranking.without(List.of(20, 99));
+
+        assertArrayEquals(new long[]{TopPages.key(3f, 30), TopPages.key(1f, 10)}, kept.pages());
+        assertEquals(4, kept.count());
+    }
+}
@@ -0,0 +1,121 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import searchengine.config.SearchSettings;
+import searchengine.dto.search.SearchData;
+import searchengine.dto.search.SearchResponse;
+import searchengine.index.InvertedIndex;
+import searchengine.index.SearchHits;
+import searchengine.model.PageText;
+import searchengine.model.Site;
+import searchengine.repositories.*;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SearchServiceTest {
+    private static final int SITE_ID = 1;
+
+    private final PageRepository pageRepository = mock(PageRepository.class);
+    private final PageTextRepository pageTextRepository = mock(PageTextRepository.class);
+    private final InvertedIndex invertedIndex = mock(InvertedIndex.class);
+    // Страницы, которые ещё есть в БД.
+    private final Set<Integer> storedPages = new HashSet<>(List.of(1, 2, 3, 4, 5));
+    private SearchService searchService;
+
+    @BeforeEach
+    void setUp() {
+        Site site = new Site();
+        site.setId(SITE_ID);
+        site.setUrl("http://site.ru");
+        SiteRepository siteRepository = mock(SiteRepository.class);
+        when(siteRepository.findByActiveTrue()).thenReturn(List.of(site));
+
+        LemmasFinder lemmasFinder = mock(LemmasFinder.class);
+        when(lemmasFinder.findLemmas("поиск")).thenReturn(Map.of("поиск", 1));
+        QueryPlanner queryPlanner = mock(QueryPlanner.class);
+        when(queryPlanner.plan(any(), any())).thenReturn(List.of("поиск"));
+
+        when(invertedIndex.isReady()).thenReturn(true);
+        when(invertedIndex.findPages(any(), any()))
+                .thenReturn(new SearchHits(new int[]{1, 2, 3, 4, 5}, new float[]{5, 4, 3, 2, 1}, 5));
+
+        when(pageRepository.findMetadataByIdIn(any())).thenAnswer(invocation -> {
+            Collection<Integer> ids = invocation.getArgument(0);
+            return ids.stream().filter(storedPages::contains).map(SearchServiceTest::metadata).collect(Collectors.toList());
+        });
+        when(pageTextRepository.findAllById(any())).thenAnswer(invocation -> {
+            Iterable<Integer> ids = invocation.getArgument(0);
+            List<PageText> texts = new ArrayList<>();
+            ids.forEach(id -> {
+                if (storedPages.contains(id)) {
+                    texts.add(new PageText(id, "Страница " + id, "поиск"));
+                }
+            });
+            return texts;
+        });
+
+        SearchSettings settings = new SearchSettings();
+        searchService = new SearchService(mock(LemmaRepository.class), mock(IndexRepository.class), pageRepository,
+                pageTextRepository, mock(PageContents.class), siteRepository, invertedIndex, lemmasFinder,
+                mock(SnippetBuilder.class), new SearchResultCache(settings), queryPlanner, mock(SearchMetrics.class), settings);
+    }
+
+    @Test
+    void returnsRankedWindow() {
+        SearchResponse response = searchService.search("поиск", null, 1, 2);
+
+        assertEquals(5, response.getCount());
+        assertEquals(List.of("/2", "/3"), uris(response.getData()));
+    }
+
+    @Test
+    void refillsWindowWhenRankedPageWasDeleted() {
+        storedPages.remove(2);
+
+        SearchResponse first = searchService.search("поиск", null, 0, 2);
+        SearchResponse second = searchService.search("поиск", null, 2, 2);
+
+        assertEquals(4, first.getCount());
+        assertEquals(List.of("/1", "/3"), uris(first.getData()));
+        assertEquals(4, second.getCount());
+        assertEquals(List.of("/4", "/5"), uris(second.getData()));
+    }
+
+    @Test
+    void returnsEmptyWindowWhenAllRankedPagesWereDeleted() {
+        storedPages.clear();
+
+        SearchResponse response = searchService.search("поиск", null, 0, 10);
+
+        assertEquals(0, response.getCount());
+        assertTrue(response.getData().isEmpty());
+    }
+
+    private static List<String> uris(List<SearchData> data) {
+        return data.stream().map(SearchData::getUri).collect(Collectors.toList());
+    }
+
+    private static PageRepository.PageMetadata metadata(int pageId) {
+        return new PageRepository.PageMetadata() {
+            @Override
+            public int getId() {
+                return pageId;
+            }
+
+            @Override
+            public int getSiteId() {
+                return SITE_ID;
+            }
+
+            @Override
+            public String getPath() {
+                return "/" + pageId;
+            }
+        };
+    }
+}
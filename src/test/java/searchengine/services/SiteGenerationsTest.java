@@ -0,0 +1,138 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.index.InvertedIndex;
+import searchengine.model.Site;
+import searchengine.repositories.SiteRepository;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SiteGenerationsTest {
+    private SiteRepository siteRepository;
+    private RecordingJdbcTemplate jdbcTemplate;
+    private InvertedIndex invertedIndex;
+    private LemmaDictionary lemmaDictionary;
+    private SiteGenerations generations;
+
+    @BeforeEach
+    void setUp() {
+        siteRepository = mock(SiteRepository.class);
+        jdbcTemplate = new RecordingJdbcTemplate();
+        invertedIndex = mock(InvertedIndex.class);
+        lemmaDictionary = mock(LemmaDictionary.class);
+        generations = new SiteGenerations(siteRepository, jdbcTemplate,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), invertedIndex, lemmaDictionary);
+    }
+
+    @Test
+    void activatesNewGenerationAndDropsPreviousSites() {
+        when(siteRepository.findByActiveTrue()).thenReturn(List.of(site(1), site(2)));
+        jdbcTemplate.pages.put(1, List.of(10, 11));
+        jdbcTemplate.pages.put(2, List.of(20));
+
+        generations.swap(List.of(site(3), site(4)));
+
+        verify(siteRepository).deactivateAll();
+        verify(siteRepository).activate(List.of(3, 4));
+        for (int siteId : List.of(1, 2)) {
+            verify(invertedIndex).removeSite(siteId);
+            verify(lemmaDictionary).forgetSite(siteId);
+            verify(siteRepository).deleteById(siteId);
+        }
+        assertEquals(List.of(List.of(10, 11), List.of(20)), jdbcTemplate.deleted("DELETE FROM page WHERE"));
+        assertEquals(List.of(List.of(10, 11), List.of(20)), jdbcTemplate.deleted("DELETE FROM `index`"));
+        assertEquals(List.of(List.of(1), List.of(2)), jdbcTemplate.deleted("DELETE FROM lemma"));
+        verify(invertedIndex, never()).removeSite(3);
+    }
+
+    @Test
+    void keepsSiteThatStaysActive() {
+        when(siteRepository.findByActiveTrue()).thenReturn(List.of(site(1), site(2)));
+
+        generations.swap(List.of(site(2), site(3)));
+
+        verify(siteRepository).activate(List.of(2, 3));
+        verify(siteRepository).deleteById(1);
+        verify(siteRepository, never()).deleteById(2);
+        verify(invertedIndex, never()).removeSite(2);
+    }
+
+    @Test
+    void deletesPagesAndLemmasInChunks() {
+        List<Integer> pageIds = new ArrayList<>();
+        for (int id = 1; id <= 1500; id++) {
+            pageIds.add(id);
+        }
+        when(siteRepository.findByActiveFalse()).thenReturn(List.of(site(5)));
+        jdbcTemplate.pages.put(5, pageIds);
+        jdbcTemplate.lemmaDeletes.addAll(List.of(1000, 1000, 7));
+
+        generations.dropInactive();
+
+        List<List<Object>> pageDeletes = jdbcTemplate.deleted("DELETE FROM page WHERE");
+        assertEquals(2, pageDeletes.size());
+        assertEquals(1000, pageDeletes.get(0).size());
+        assertEquals(500, pageDeletes.get(1).size());
+        assertEquals(3, jdbcTemplate.deleted("DELETE FROM lemma").size());
+        verify(siteRepository).deleteById(5);
+    }
+
+    @Test
+    void activatesUnfinishedGenerationOnlyWhenNoneIsActive() {
+        when(siteRepository.findByActiveFalse()).thenReturn(List.of(site(3), site(4)));
+
+        generations.activateIfNoneActive();
+        verify(siteRepository).activate(List.of(3, 4));
+
+        when(siteRepository.findByActiveTrue()).thenReturn(List.of(site(1)));
+        generations.activateIfNoneActive();
+        verify(siteRepository, times(1)).activate(anyCollection());
+    }
+
+    private static Site site(int id) {
+        Site site = new Site();
+        site.setId(id);
+        site.setUrl("https://site" + id + ".example");
+        return site;
+    }
+
+    /**
+     * Страницы сайтов задаются тестом; запросы DELETE запоминаются вместе с аргументами.
+     */
+    private static final class RecordingJdbcTemplate extends JdbcTemplate {
+        private final Map<Integer, List<Integer>> pages = new HashMap<>();
+        private final Deque<Integer> lemmaDeletes = new ArrayDeque<>();
+        private final List<Map.Entry<String, List<Object>>> updates = new ArrayList<>();
+
+        List<List<Object>> deleted(String sqlPrefix) {
+            List<List<Object>> args = new ArrayList<>();
+            updates.stream().filter(update -> update.getKey().startsWith(sqlPrefix)).forEach(update -> args.add(update.getValue()));
+            return args;
+        }
+
+        @Override
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            List<T> ids = new ArrayList<>();
+            pages.getOrDefault((Integer) args[0], List.of()).forEach(id -> ids.add(elementType.cast(id)));
+            return ids;
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            updates.add(Map.entry(sql, Arrays.asList(args)));
+            if (sql.startsWith("DELETE FROM lemma")) {
+                Integer deleted = lemmaDeletes.poll();
+                return deleted == null ? 0 : deleted;
+            }
+            return args.length;
+        }
+    }
+}
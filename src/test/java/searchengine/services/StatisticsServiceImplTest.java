@@ -0,0 +1,79 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import searchengine.dto.statistics.DetailedStatisticsItem;
+import searchengine.dto.statistics.StatisticsData;
+import searchengine.model.Site;
+import searchengine.model.Status;
+import searchengine.repositories.SiteRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StatisticsServiceImplTest {
+    private final SiteRepository siteRepository = mock(SiteRepository.class);
+    private final IndexingService indexingService = mock(IndexingService.class);
+    private StatisticsServiceImpl statisticsService;
+
+    @BeforeEach
+    void setUp() {
+        statisticsService = new StatisticsServiceImpl(siteRepository, indexingService, new IndexingProgress(),
+                mock(LemmaDictionary.class));
+    }
+
+    @Test
+    void showsActiveGenerationAfterStoppedReindex() {
+        Site active = site(1, true, Status.INDEXED, 10);
+        Site abandoned = site(2, false, Status.FAILED, 3);
+        when(siteRepository.findAll()).thenReturn(List.of(active, abandoned));
+
+        DetailedStatisticsItem item = single(statisticsService.getStatistics().getStatistics());
+
+        assertEquals("INDEXED", item.getStatus());
+        assertEquals(10, item.getPages());
+    }
+
+    @Test
+    void showsNewestGenerationWhileIndexing() {
+        when(siteRepository.findAll()).thenReturn(List.of(site(1, true, Status.INDEXED, 10), site(2, false, Status.INDEXING, 0)));
+        when(indexingService.isIndexing()).thenReturn(true);
+
+        DetailedStatisticsItem item = single(statisticsService.getStatistics().getStatistics());
+
+        assertEquals("INDEXING", item.getStatus());
+    }
+
+    @Test
+    void showsSiteWithoutActiveRecord() {
+        when(siteRepository.findAll()).thenReturn(List.of(site(2, false, Status.FAILED, null)));
+
+        DetailedStatisticsItem item = single(statisticsService.getStatistics().getStatistics());
+
+        assertEquals("FAILED", item.getStatus());
+        assertEquals(0, item.getPages());
+        assertEquals(0, item.getLemmas());
+    }
+
+    private static DetailedStatisticsItem single(StatisticsData data) {
+        assertEquals(1, data.getDetailed().size());
+        assertEquals(data.getTotal().getPages(), data.getDetailed().get(0).getPages());
+        return data.getDetailed().get(0);
+    }
+
+    private static Site site(int id, boolean active, Status status, Integer pages) {
+        Site site = new Site();
+        site.setId(id);
+        site.setUrl("http://site.ru");
+        site.setName("Сайт");
+        site.setActive(active);
+        site.setStatus(status);
+        site.setStatusTime(LocalDateTime.now());
+        site.setPageCount(pages);
+        site.setLemmaCount(pages);
+        return site;
+    }
+}
@@ -0,0 +1,61 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    @Test
+    void allowsBurstThenReportsWaitForNextToken() {
+        TokenBucket bucket = new TokenBucket(1, 3);
+
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        long wait = bucket.tryAcquire();
+
+        assertTrue(wait > 0 && wait <= TimeUnit.SECONDS.toNanos(1), "ожидание " + wait);
+    }
+
+    @Test
+    void refillsAtConfiguredRate() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100, 1);
+        assertEquals(0, bucket.tryAcquire());
+        long wait = bucket.tryAcquire();
+        assertTrue(wait > 0);
+
+        TimeUnit.NANOSECONDS.sleep(wait + TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertEquals(0, bucket.tryAcquire());
+    }
+
+    @Test
+    void treatsZeroBurstAsOneToken() {
+        TokenBucket bucket = new TokenBucket(1, 0);
+
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+    }
+
+    @Test
+    void lowersRateAndBurstToStricterLimit() {
+        TokenBucket bucket = new TokenBucket(1000, 5);
+
+        assertTrue(bucket.limitTo(1, 1));
+        assertFalse(bucket.limitTo(1, 1));
+        assertTrue(bucket.limitTo(10, 3));
+
+        assertEquals(1.0, bucket.permitsPerSecond(), 0);
+        assertEquals(1, bucket.burst());
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test
+    void rejectsNonPositiveRate() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+    }
+}
@@ -0,0 +1,175 @@
+package searchengine.services;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import searchengine.config.CrawlerSettings;
+import searchengine.model.Site;
+import searchengine.repositories.PageRepository;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class WebCrawlerTest {
+    private static final String STORED_BODY = "<html><body><a href=\"/stored\">старая ссылка</a></body></html>";
+    private static final String BODY = "<html><body><a href=\"/next\">ссылка</a></body></html>";
+
+    private HttpServer server;
+    private final List<String> conditionalHeaders = new ArrayList<>();
+    private String responseEtag;
+
+    private final Site site = new Site();
+    private PageRepository pageRepository;
+    private PageContents pageContents;
+    private PageWriter pageWriter;
+    private CrawlPipeline pipeline;
+    private final List<ParsedPage> submitted = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 16);
+        server.createContext("/", this::handle);
+        server.start();
+
+        site.setId(1);
+        site.setUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        pageRepository = mock(PageRepository.class);
+        pageContents = mock(PageContents.class);
+        pageWriter = mock(PageWriter.class);
+        doAnswer(invocation -> submitted.add(invocation.getArgument(0))).when(pageWriter).submit(any());
+        CrawlerSettings settings = new CrawlerSettings();
+        settings.setExtractThreads(1);
+        settings.setLemmatizeThreads(1);
+        pipeline = new CrawlPipeline(settings);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    void sendsStoredValidatorsAndTakesLinksFromStoredCopyOnNotModified() throws Exception {
+        PageRepository.KnownPage page = knownPage(7, "/page", "\"v1\"", PageVersion.hash(bytes(STORED_BODY)));
+        PageRepository.KnownPage other = knownPage(8, "/gone", null, "hash");
+        when(pageRepository.findKnownPagesBySite(site)).thenReturn(List.of(page, other));
+        when(pageContents.find(7)).thenReturn(STORED_BODY);
+        responseEtag = "\"v1\"";
+
+        KnownPages knownPages = KnownPages.load(site, pageRepository, pageContents);
+        List<String> links = crawl(knownPages, "/page");
+
+        assertEquals(List.of("If-None-Match: \"v1\"", "If-Modified-Since: Wed, 21 Oct 2015 07:28:00 GMT"), conditionalHeaders);
+        assertEquals(List.of(site.getUrl() + "/stored"), links);
+        assertTrue(submitted.isEmpty());
+        verify(pageWriter, never()).updateValidators(anyInt(), any());
+        assertEquals(List.of(8), knownPages.unvisitedPageIds());
+    }
+
+    @Test
+    void storesNewValidatorsWhenBodyIsUnchanged() throws Exception {
+        PageRepository.KnownPage page = knownPage(7, "/page", "\"v1\"", PageVersion.hash(bytes(BODY)));
+        when(pageRepository.findKnownPagesBySite(site)).thenReturn(List.of(page));
+        responseEtag = "\"v2\"";
+
+        KnownPages knownPages = KnownPages.load(site, pageRepository, pageContents);
+        List<String> links = crawl(knownPages, "/page");
+
+        assertEquals(List.of(site.getUrl() + "/next"), links);
+        assertTrue(submitted.isEmpty());
+        verify(pageWriter).updateValidators(7, new PageVersion("\"v2\"", null, PageVersion.hash(bytes(BODY))));
+        verifyNoInteractions(pageContents);
+        assertTrue(knownPages.unvisitedPageIds().isEmpty());
+    }
+
+    @Test
+    void replacesStoredPageWhenBodyChanged() throws Exception {
+        PageRepository.KnownPage page = knownPage(7, "/page", "\"v1\"", PageVersion.hash(bytes(STORED_BODY)));
+        when(pageRepository.findKnownPagesBySite(site)).thenReturn(List.of(page));
+        responseEtag = "\"v2\"";
+
+        List<String> links = crawl(KnownPages.load(site, pageRepository, pageContents), "/page");
+
+        assertEquals(List.of(site.getUrl() + "/next"), links);
+        assertEquals(1, submitted.size());
+        ParsedPage parsed = submitted.get(0);
+        assertEquals(7, parsed.existingPageId());
+        assertEquals("/page", parsed.path());
+        assertEquals(new PageVersion("\"v2\"", null, PageVersion.hash(bytes(BODY))), parsed.version());
+        verify(pageWriter, never()).updateValidators(anyInt(), any());
+    }
+
+    @Test
+    void addsUnknownPageWithoutValidators() throws Exception {
+        responseEtag = "\"v1\"";
+
+        crawl(KnownPages.none(), "/page");
+
+        assertTrue(conditionalHeaders.isEmpty());
+        assertEquals(1, submitted.size());
+        assertFalse(submitted.get(0).isUpdate());
+    }
+
+    private List<String> crawl(KnownPages knownPages, String path) throws Exception {
+        WebCrawler crawler = new WebCrawler(site, mock(LemmasFinder.class), pageWriter, knownPages, pipeline, 1000,
+                mock(CrawlMetrics.class), new IndexingProgress().start(site, 0));
+        CompletableFuture<List<String>> links = new CompletableFuture<>();
+        crawler.crawl(site.getUrl() + path, links::complete);
+        List<String> result = links.get(10, TimeUnit.SECONDS);
+        pipeline.awaitIdle();
+        return result;
+    }
+
+    private static PageRepository.KnownPage knownPage(int id, String path, String etag, String contentHash) {
+        PageRepository.KnownPage page = mock(PageRepository.KnownPage.class);
+        when(page.getId()).thenReturn(id);
+        when(page.getPath()).thenReturn(path);
+        when(page.getCode()).thenReturn(200);
+        when(page.getEtag()).thenReturn(etag);
+        when(page.getLastModified()).thenReturn(etag == null ? null : "Wed, 21 Oct 2015 07:28:00 GMT");
+        when(page.getContentHash()).thenReturn(contentHash);
+        return page;
+    }
+
+    private static byte[] bytes(String body) {
+        return body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Отвечает 304, если клиент прислал текущий ETag, иначе отдаёт BODY.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+            if (ifNoneMatch != null) {
+                conditionalHeaders.add("If-None-Match: " + ifNoneMatch);
+            }
+            if (ifModifiedSince != null) {
+                conditionalHeaders.add("If-Modified-Since: " + ifModifiedSince);
+            }
+            exchange.getResponseHeaders().set("ETag", responseEtag);
+            if (responseEtag.equals(ifNoneMatch)) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            byte[] body = bytes(BODY);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+}